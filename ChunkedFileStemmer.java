@@ -0,0 +1,258 @@
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses a large text file on several worker threads at once. The file is split
+ * into byte ranges that end just after a line feed, so no line is split and no
+ * UTF-8 sequence is cut. Each range is parsed by its own task into a buffer of
+ * words and positions counted from 1. Once the last chunk is parsed, the
+ * chunks are stitched together in file order, shifting each chunk by the
+ * number of words before it, so every position matches what
+ * {@link InvertedIndexBuilder#stemFile(Path, InvertedIndex)} would produce.
+ */
+public class ChunkedFileStemmer {
+
+	/** The default size of a chunk in bytes. */
+	public static final long DEFAULT_CHUNK_SIZE = 64L << 20;
+
+	/**
+	 * Receives the local index of a file once every chunk has been parsed.
+	 */
+	public interface Sink {
+		/**
+		 * Receives the local index of a file.
+		 *
+		 * @param localIndex an InvertedIndex of the words and positions of the file
+		 * @throws IOException if unable to add the local index
+		 */
+		void accept(InvertedIndex localIndex) throws IOException;
+	}
+
+	/**
+	 * Splits a file into chunks and executes a task to parse each chunk, without
+	 * waiting for them. The task that parses the last chunk stitches the chunks
+	 * into one local index and passes it to the sink, on its own worker thread.
+	 *
+	 * @param file      the text file to parse
+	 * @param chunkSize the approximate size of each chunk in bytes
+	 * @param queue     the work queue to parse the chunks with
+	 * @param sink      receives the local index of the file
+	 * @throws IOException if unable to read the file to split it
+	 */
+	public static void stemFile(Path file, long chunkSize, WorkQueue queue, Sink sink) throws IOException {
+		long[] starts = split(file, chunkSize);
+		Chunks chunks = new Chunks(file, starts.length - 1, queue, sink);
+		for (int chunk = 0; chunk < starts.length - 1; chunk++) {
+			queue.executeOrRun(new ChunkTask(chunks, chunk, starts[chunk], starts[chunk + 1]));
+		}
+	}
+
+	/**
+	 * Finds the byte offsets the chunks of a file start at. Each chunk after the
+	 * first starts just after the first line feed at least chunk size bytes past
+	 * the start of the previous chunk.
+	 *
+	 * @param file      the file to split
+	 * @param chunkSize the approximate size of each chunk in bytes
+	 * @return the start offset of each chunk, followed by the size of the file
+	 * @throws IOException if unable to read the file
+	 */
+	static long[] split(Path file, long chunkSize) throws IOException {
+		ArrayList<Long> starts = new ArrayList<>();
+		starts.add(0L);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);) {
+			long size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 13);
+			long position = Math.max(1, chunkSize) - 1;
+			while (position < size) {
+				long start = -1;
+				while (start < 0 && position < size) {
+					buffer.clear();
+					int read = channel.read(buffer, position);
+					if (read <= 0) {
+						break;
+					}
+					for (int i = 0; i < read; i++) {
+						if (buffer.get(i) == '\n') {
+							start = position + i + 1;
+							break;
+						}
+					}
+					position += read;
+				}
+				if (start < 0 || start >= size) {
+					break;
+				}
+				starts.add(start);
+				position = start + Math.max(1, chunkSize) - 1;
+			}
+			starts.add(size);
+		}
+
+		long[] result = new long[starts.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = starts.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * The word buffers of the chunks of one file, filled in by the chunk tasks.
+	 */
+	private static class Chunks {
+		private final Path file;
+		private final WorkQueue queue;
+		private final Sink sink;
+		private final ArrayList<HashMap<String, PositionList>> buffers;
+		private final int[] counts;
+		private final AtomicInteger remaining;
+		private volatile boolean failed;
+
+		public Chunks(Path file, int count, WorkQueue queue, Sink sink) {
+			this.file = file;
+			this.queue = queue;
+			this.sink = sink;
+			this.buffers = new ArrayList<>(Collections.nCopies(count, null));
+			this.counts = new int[count];
+			this.remaining = new AtomicInteger(count);
+			this.failed = false;
+		}
+
+		/**
+		 * Records a parsed chunk, and stitches the file together if it was the last
+		 * chunk to finish.
+		 *
+		 * @param chunk the number of the chunk
+		 * @param terms the words of the chunk and their positions, or null if the
+		 *              chunk could not be parsed
+		 * @param count the number of words in the chunk
+		 * @throws IOException if unable to pass the file to the sink
+		 */
+		public void done(int chunk, HashMap<String, PositionList> terms, int count) throws IOException {
+			synchronized (this) {
+				buffers.set(chunk, terms);
+				counts[chunk] = count;
+				failed |= terms == null;
+			}
+			if (remaining.decrementAndGet() == 0 && !failed) {
+				sink.accept(stitch());
+			}
+		}
+
+		/**
+		 * Combines the chunk buffers in file order into one local index.
+		 *
+		 * @return the local index of the file
+		 */
+		private synchronized InvertedIndex stitch() {
+			HashMap<String, PositionList> words = new HashMap<>();
+			int offset = 0;
+			for (int chunk = 0; chunk < counts.length; chunk++) {
+				for (Map.Entry<String, PositionList> word : buffers.get(chunk).entrySet()) {
+					words.computeIfAbsent(word.getKey(), stem -> new PositionList()).addAll(word.getValue(), offset);
+				}
+				offset += counts[chunk];
+				buffers.set(chunk, null);
+			}
+
+			for (PositionList positions : words.values()) {
+				positions.compress();
+			}
+			InvertedIndex localIndex = new InvertedIndex();
+			localIndex.addDocument(file.toString(), words, offset);
+			return localIndex;
+		}
+	}
+
+	/**
+	 * Parses one byte range of a file into a buffer of words and positions.
+	 */
+	private static class ChunkTask implements Runnable {
+		private final Chunks chunks;
+		private final int chunk;
+		private final long start;
+		private final long end;
+
+		public ChunkTask(Chunks chunks, int chunk, long start, long end) {
+			this.chunks = chunks;
+			this.chunk = chunk;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			HashMap<String, PositionList> parsed = null;
+			int count = 0;
+			try (FileChannel channel = FileChannel.open(chunks.file, StandardOpenOption.READ);) {
+				channel.position(start);
+				InputStream range = new RangeInputStream(Channels.newInputStream(channel), end - start);
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(range, StandardCharsets.UTF_8.newDecoder()), 1 << 16);
+				HashMap<String, PositionList> terms = new HashMap<>();
+				count = chunks.queue.compute(() -> InvertedIndexBuilder.stemLines(reader, terms));
+				parsed = terms;
+			} catch (IOException e) {
+				System.out.println("Could not build local index from file chunk");
+				chunks.queue.reportFailure();
+			}
+
+			try {
+				chunks.done(chunk, parsed, count);
+			} catch (IOException e) {
+				System.out.println("Could not add local index from chunked file");
+				chunks.queue.reportFailure();
+			}
+		}
+	}
+
+	/**
+	 * Reads at most a fixed number of bytes from the stream it wraps.
+	 */
+	private static class RangeInputStream extends FilterInputStream {
+		private long remaining;
+
+		public RangeInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+import java.util.List;
+
+/**
+ * An inverted index whose reads and writes may be called from several threads at
+ * once, such as {@link ThreadSafeInvertedIndex}, {@link ShardedInvertedIndex}
+ * and {@link SegmentedInvertedIndex}. The builders that parse files on a
+ * {@link WorkQueue} add them through this interface.
+ */
+public interface ConcurrentIndex extends WritableIndex {
+
+	/**
+	 * Returns the locks guarding the index, so their contention can be reported.
+	 *
+	 * @return the locks of the index
+	 */
+	public abstract List<ReadWriteLock> locks();
+
+	/**
+	 * Purges removed locations on a work queue, without waiting for it to finish.
+	 *
+	 * @param queue the work queue to compact with
+	 */
+	public abstract void compact(WorkQueue queue);
+}
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns each indexed location a dense int id, storing the location path and
+ * its word total once in parallel arrays so the rest of the index can refer to
+ * locations by id instead of by path. Also tracks how many distinct words each
+ * location holds, so location queries do not need to scan the index.
+ *
+ * Removed locations keep their id and path, so ids held by the rest of the index
+ * stay valid, but a later add of the same path assigns a new id. Removed ids are
+ * marked with a tombstone, so searches can skip their postings until they are
+ * purged, and in a pending set until the index reports them purged.
+ * {@link #compact(int[])} builds a table without the removed ids.
+ *
+ * Changes must be made by one thread at a time. {@link #getPath(int)},
+ * {@link #getTotal(int)} and {@link #isRemoved(int)} may be called without a
+ * lock while another thread changes the table, for ids published to the reader
+ * by a lock or volatile write made after the id was added: the arrays are
+ * replaced through volatile fields when they grow, and each element is a single
+ * read, so a concurrent removal is either seen or not.
+ */
+public class DocumentTable {
+
+	/** The initial capacity of the parallel arrays. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Map of location paths to their ids. */
+	private final HashMap<String, Integer> ids;
+
+	/** The location path of each id. */
+	private volatile String[] paths;
+
+	/** The word total of each id. */
+	private volatile int[] totals;
+
+	/** Whether the location of each id has been removed. */
+	private volatile boolean[] tombstones;
+
+	/** The number of distinct words stored for each id. */
+	private int[] terms;
+
+	/** The number of ids assigned. */
+	private int size;
+
+	/** The number of ids whose location has been removed. */
+	private int removed;
+
+	/** The removed ids whose postings may still be in the index. */
+	private final BitSet pending;
+
+	/**
+	 * Initializes an empty document table
+	 */
+	public DocumentTable() {
+		ids = new HashMap<>();
+		paths = new String[INITIAL_CAPACITY];
+		totals = new int[INITIAL_CAPACITY];
+		terms = new int[INITIAL_CAPACITY];
+		size = 0;
+		removed = 0;
+		tombstones = new boolean[INITIAL_CAPACITY];
+		pending = new BitSet();
+	}
+
+	/**
+	 * Returns the id of a location, assigning the next free id if the location has
+	 * not been seen before.
+	 *
+	 * @param path the location path
+	 *
+	 * @return the id of the location
+	 */
+	public int add(String path) {
+		Integer id = ids.get(path);
+		if (id != null) {
+			return id;
+		}
+
+		if (size == paths.length) {
+			int capacity = size + Math.max(1, size >> 1);
+			paths = Arrays.copyOf(paths, capacity);
+			totals = Arrays.copyOf(totals, capacity);
+			terms = Arrays.copyOf(terms, capacity);
+			tombstones = Arrays.copyOf(tombstones, capacity);
+		}
+
+		paths[size] = path;
+		totals[size] = 0;
+		terms[size] = 0;
+		ids.put(path, size);
+		return size++;
+	}
+
+	/**
+	 * Returns the id of a location.
+	 *
+	 * @param path the location path
+	 *
+	 * @return the id of the location, or -1 if the location is not in the table
+	 */
+	public int getId(String path) {
+		Integer id = ids.get(path);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Removes a location from the table and marks its id with a tombstone. Its id
+	 * is not reused.
+	 *
+	 * @param path the location path
+	 *
+	 * @return the id the location had, or -1 if the location is not in the table
+	 */
+	public int remove(String path) {
+		Integer id = ids.remove(path);
+		if (id == null) {
+			return -1;
+		}
+		terms[id] = 0;
+		removed++;
+		tombstones[id] = true;
+		pending.set(id);
+		return id;
+	}
+
+	/**
+	 * Tests whether the location of an id has been removed.
+	 *
+	 * @param id the id of the location
+	 *
+	 * @return true if the location was removed
+	 */
+	public boolean isRemoved(int id) {
+		return tombstones[id];
+	}
+
+	/**
+	 * Tests whether some removed ids may still have postings in the index.
+	 *
+	 * @return true if some removed ids have not been purged
+	 */
+	public boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Returns the removed ids whose postings may still be in the index.
+	 *
+	 * @return a copy of the pending ids
+	 */
+	public BitSet pending() {
+		return (BitSet) pending.clone();
+	}
+
+	/**
+	 * Records that the postings of some removed ids have been purged from the
+	 * index.
+	 *
+	 * @param ids the purged ids
+	 */
+	public void purged(BitSet ids) {
+		pending.andNot(ids);
+	}
+
+	/**
+	 * Returns the location path of an id.
+	 *
+	 * @param id the id of the location
+	 *
+	 * @return the location path, even if the location was removed
+	 */
+	public String getPath(int id) {
+		return paths[id];
+	}
+
+	/**
+	 * Returns the word total of an id.
+	 *
+	 * @param id the id of the location
+	 *
+	 * @return the number of words in the location
+	 */
+	public int getTotal(int id) {
+		return totals[id];
+	}
+
+	/**
+	 * Sets the word total of an id.
+	 *
+	 * @param id    the id of the location
+	 * @param total the number of words in the location
+	 */
+	public void setTotal(int id, int total) {
+		totals[id] = total;
+	}
+
+	/**
+	 * Returns the number of distinct words stored for an id.
+	 *
+	 * @param id the id of the location
+	 *
+	 * @return the number of words with postings in the location
+	 */
+	public int getTerms(int id) {
+		return terms[id];
+	}
+
+	/**
+	 * Records that new words have postings in a location.
+	 *
+	 * @param id    the id of the location
+	 * @param count the number of words newly found in the location
+	 */
+	public void addTerms(int id, int count) {
+		terms[id] += count;
+	}
+
+	/**
+	 * Returns the number of ids assigned, including removed ones.
+	 *
+	 * @return the number of ids in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of locations that have not been removed.
+	 *
+	 * @return the number of locations in the table
+	 */
+	public int count() {
+		return size - removed;
+	}
+
+	/**
+	 * Returns a copy of the table that is independent of later changes to this
+	 * table.
+	 *
+	 * @return a copy of the table
+	 */
+	public DocumentTable copy() {
+		DocumentTable copy = new DocumentTable();
+		copy.ids.putAll(ids);
+		copy.paths = Arrays.copyOf(paths, Math.max(size, 1));
+		copy.totals = Arrays.copyOf(totals, Math.max(size, 1));
+		copy.terms = Arrays.copyOf(terms, Math.max(size, 1));
+		copy.tombstones = Arrays.copyOf(tombstones, Math.max(size, 1));
+		copy.size = size;
+		copy.removed = removed;
+		copy.pending.or(pending);
+		return copy;
+	}
+
+	/**
+	 * Builds a table with the same locations but without removed ids. Ids are
+	 * renumbered in order, so postings sorted by old id stay sorted by new id.
+	 *
+	 * @param remap filled with the new id of each old id, or -1 for removed ids;
+	 *              must be at least {@link #size()} long
+	 *
+	 * @return a table of the locations that have not been removed
+	 */
+	public DocumentTable compact(int[] remap) {
+		DocumentTable compact = new DocumentTable();
+		for (int id = 0; id < size; id++) {
+			if (tombstones[id]) {
+				remap[id] = -1;
+				continue;
+			}
+			int document = compact.add(paths[id]);
+			compact.totals[document] = totals[id];
+			compact.terms[document] = terms[id];
+			remap[id] = document;
+		}
+		return compact;
+	}
+
+	/**
+	 * Builds a sorted map of location paths to their word totals.
+	 *
+	 * @return a map of locations to word totals
+	 */
+	public TreeMap<String, Integer> toMap() {
+		TreeMap<String, Integer> map = new TreeMap<>();
+		for (int id = 0; id < size; id++) {
+			if (!tombstones[id]) {
+				map.put(paths[id], totals[id]);
+			}
+		}
+		return map;
+	}
+}
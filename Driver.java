@@ -4,6 +4,7 @@ import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
 
 public class Driver {
 
@@ -12,26 +13,108 @@ public class Driver {
 		ArgumentMap flagParser = new ArgumentMap();
 		flagParser.parse(args);
 
+		WorkQueue queue = null;
+
+		if (flagParser.hasFlag("-threads") || flagParser.hasFlag("-virtual")) {
+			int numThreads = flagParser.getInteger("-threads", 5);
+			int capacity = flagParser.getInteger("-capacity", 0);
+			WorkQueue.Saturation saturation = WorkQueue.Saturation.BLOCK;
+			if (flagParser.hasFlag("-saturation")) {
+				String policy = flagParser.getString("-saturation", "block");
+				try {
+					saturation = WorkQueue.Saturation.valueOf(policy.toUpperCase().replace('-', '_'));
+				} catch (IllegalArgumentException e) {
+					System.out.println("Unknown saturation policy, blocking instead: " + policy);
+				}
+			}
+			if (flagParser.hasFlag("-virtual") && !VirtualThreadQueue.isSupported()) {
+				System.out.println("Virtual threads are not supported, using " + numThreads + " worker threads");
+			}
+
+			if (flagParser.hasFlag("-virtual") && VirtualThreadQueue.isSupported()) {
+				int parallelism = flagParser.getInteger("-virtual", Runtime.getRuntime().availableProcessors());
+				queue = new VirtualThreadQueue(parallelism, capacity, saturation);
+			} else if (flagParser.hasFlag("-steal")) {
+				queue = new WorkStealingQueue(numThreads, capacity, saturation);
+			} else {
+				queue = new WorkQueue(numThreads, capacity, saturation);
+			}
+			if (flagParser.hasFlag("-metrics")) {
+				queue.enableMetrics();
+			}
+		}
+
+		try {
+			run(flagParser, queue);
+		} catch (RejectedExecutionException e) {
+			System.out.println("Work queue rejected a task: " + e.getMessage());
+		} finally {
+			if (flagParser.hasFlag("-metrics")) {
+				System.out.println("Stem cache: " + StemCache.shared());
+			}
+			if (queue != null && queue.metrics() != null) {
+				Path path = flagParser.getPath("-metrics", Paths.get("metrics.json"));
+				try {
+					queue.metrics().toJSON(path);
+				} catch (IOException e) {
+					System.out.println("Could not output work queue metrics");
+				}
+			}
+			if (queue != null) {
+				queue.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Builds or loads the index, then writes and searches it as the flags ask.
+	 *
+	 * @param flagParser the parsed command-line flags
+	 * @param queue      the work queue to build and search with, or null to run
+	 *                   single-threaded
+	 */
+	private static void run(ArgumentMap flagParser, WorkQueue queue) {
 		InvertedIndex index = null;
-		ThreadSafeInvertedIndex threadSafe = null;
+		ConcurrentIndex threadSafe = null;
 
 		FileParser resultMap = null;
 
-		WorkQueue queue = null;
+		if (queue != null) {
+			boolean optimistic = "optimistic".equals(flagParser.getString("-lock"));
 
-		if (flagParser.hasFlag("-threads")) {
-			int numThreads = flagParser.getInteger("-threads", 5);
-			queue = new WorkQueue(numThreads);
-
-			threadSafe = new ThreadSafeInvertedIndex();
-			index = threadSafe;
-			resultMap = new ThreadSafeQueryParser(threadSafe, queue);
+			if (flagParser.hasFlag("-segments")) {
+				int flushSize = flagParser.getInteger("-segments", SegmentedInvertedIndex.DEFAULT_FLUSH);
+				threadSafe = new SegmentedInvertedIndex(queue, flushSize,
+						optimistic ? new OptimisticReadWriteLock() : new SimpleReadWriteLock());
+			} else if (flagParser.hasFlag("-shards")) {
+				int shards = flagParser.getInteger("-shards", ShardedInvertedIndex.DEFAULT);
+				threadSafe = optimistic ? new ShardedInvertedIndex(shards, OptimisticReadWriteLock::new)
+						: new ShardedInvertedIndex(shards);
+			} else {
+				threadSafe = optimistic ? new ThreadSafeInvertedIndex(new OptimisticReadWriteLock())
+						: new ThreadSafeInvertedIndex();
+			}
 		} else {
 			index = new InvertedIndex();
-			resultMap = new QueryFileParser(index);
 		}
 
-		if (flagParser.hasFlag("-path")) {
+		FrozenInvertedIndex frozen = null;
+		MappedInvertedIndex mapped = null;
+		SpillingIndexBuilder spilled = null;
+
+		if (flagParser.hasFlag("-load")) {
+			Path path = flagParser.getPath("-load", Paths.get("index.bin"));
+			try {
+				if (flagParser.hasFlag("-mmap")) {
+					mapped = new MappedInvertedIndex(path);
+				} else {
+					frozen = IndexFile.read(path);
+				}
+			} catch (IOException e) {
+				System.out.println("Could not load index from path: " + path);
+				return;
+			}
+		} else if (flagParser.hasFlag("-path")) {
 			if (flagParser.getPath("-path") == null) {
 				System.out.println("Cannot resolve path to file to build index");
 				return;
@@ -40,21 +123,107 @@ public class Driver {
 			Path path = flagParser.getPath("-path");
 
 			try {
-				if (threadSafe != null) {
-					ThreadSafeInvertedIndexBuilder.traverse(path, threadSafe, queue);
-					queue.finish();
+				if (flagParser.hasFlag("-incremental")) {
+					Path saved = flagParser.getPath("-incremental", Paths.get("index.bin"));
+					if (threadSafe != null) {
+						frozen = IncrementalIndexBuilder.update(path, threadSafe, saved, queue);
+					} else {
+						frozen = IncrementalIndexBuilder.update(path, index, saved);
+					}
+				} else if (flagParser.hasFlag("-budget")) {
+					long budget = flagParser.getInteger("-budget", (int) (SpillingIndexBuilder.DEFAULT_BUDGET >> 20));
+					Path runs = flagParser.getPath("-spill");
+					if (runs == null) {
+						runs = Files.createTempDirectory("index-runs");
+						runs.toFile().deleteOnExit();
+					}
+					spilled = new SpillingIndexBuilder(budget << 20, runs);
+					if (threadSafe != null) {
+						ThreadSafeInvertedIndexBuilder.traverseSpilled(path, spilled, queue,
+								flagParser.hasFlag("-largest"));
+					} else {
+						InvertedIndexBuilder.traverse(path, spilled);
+					}
+
+					if (flagParser.hasFlag("-search") || flagParser.hasFlag("-save")) {
+						Path saved = flagParser.hasFlag("-save") ? flagParser.getPath("-save", Paths.get("index.bin"))
+								: runs.resolve("index.bin");
+						if (!flagParser.hasFlag("-save")) {
+							saved.toFile().deleteOnExit();
+						}
+						spilled.save(saved);
+						spilled.close();
+						spilled = null;
+						mapped = new MappedInvertedIndex(saved);
+					}
+				} else if (threadSafe != null) {
+					boolean largestFirst = flagParser.hasFlag("-largest");
+					if (flagParser.hasFlag("-merge")) {
+						ThreadSafeInvertedIndexBuilder.traverseMerged(path, threadSafe, queue, largestFirst);
+					} else {
+						long chunkSize = flagParser.getInteger("-chunk",
+								(int) (ChunkedFileStemmer.DEFAULT_CHUNK_SIZE >> 20));
+						ThreadSafeInvertedIndexBuilder.traverse(path, threadSafe, queue, largestFirst, chunkSize << 20);
+						queue.finish();
+					}
 				} else {
-					InvertedIndexBuilder.traverse(path, index);
+					InvertedIndexBuilder.traverse(path, index, flagParser.hasFlag("-mmap"));
+					index.compress();
 				}
 			} catch (IOException e) {
 				System.out.println("Cannot build inverted index from path: " + path);
 			}
 		}
 
+		if (threadSafe != null && "optimistic".equals(flagParser.getString("-lock"))) {
+			System.out.println("Index lock contention: " + LockContention.summarize(threadSafe.locks()));
+		}
+
+		if (mapped == null && frozen == null && spilled == null
+				&& (threadSafe != null || flagParser.hasFlag("-save"))) {
+			frozen = threadSafe != null ? threadSafe.freeze() : index.freeze();
+		}
+
+		// the snapshot holds everything searched or saved from here on
+		if (mapped != null || frozen != null) {
+			index = null;
+			threadSafe = null;
+		}
+
+		SearchableIndex searchIndex = threadSafe != null ? threadSafe : index;
+		if (mapped != null) {
+			searchIndex = mapped;
+		} else if (frozen != null) {
+			searchIndex = frozen;
+		}
+
+		if (queue != null) {
+			resultMap = new ThreadSafeQueryParser(searchIndex, queue);
+		} else {
+			resultMap = new QueryFileParser(searchIndex);
+		}
+
+		if (flagParser.hasFlag("-save")) {
+			Path path = flagParser.getPath("-save", Paths.get("index.bin"));
+			try {
+				if (mapped != null) {
+					mapped.save(path);
+				} else {
+					frozen.save(path);
+				}
+			} catch (IOException e) {
+				System.out.println("Could not save index to path: " + path);
+			}
+		}
+
 		if ((flagParser.hasFlag("-index"))) {
 			try {
 				Path path = flagParser.getPath("-index", Paths.get("index.json"));
-				index.toJSON(path);
+				if (spilled != null) {
+					spilled.toJSON(path);
+				} else {
+					searchIndex.toJSON(path);
+				}
 			} catch (Exception e2) {
 				System.out.println("Could not access file to write out index");
 			}
@@ -63,12 +232,24 @@ public class Driver {
 		if ((flagParser.hasFlag("-locations"))) {
 			try {
 				Path path = flagParser.getPath("-locations", Paths.get("locations.json"));
-				index.outPutLocationMap(path);
+				if (spilled != null) {
+					spilled.outPutLocationMap(path);
+				} else {
+					searchIndex.outPutLocationMap(path);
+				}
 			} catch (Exception e1) {
 				System.out.println("couldn't access path to output location map");
 			}
 		}
 
+		if (spilled != null) {
+			try {
+				spilled.close();
+			} catch (IOException e) {
+				System.out.println("Could not delete spilled runs");
+			}
+		}
+
 		if (flagParser.hasFlag("-search")) {
 
 			if (flagParser.getPath("-search") == null) {
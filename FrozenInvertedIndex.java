@@ -0,0 +1,637 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable, array-backed snapshot of an inverted index. Words are stored in
+ * one sorted array, and the postings of every word are stored in parallel arrays
+ * indexed by offset, so searches are binary searches and array scans. Since
+ * nothing is modified after construction, any number of threads may search the
+ * snapshot without locking.
+ */
+public class FrozenInvertedIndex implements SearchableIndex {
+
+	/** Sorted array of every word in the index. */
+	private final String[] words;
+
+	/** The offset of the first posting of each word, plus one final end offset. */
+	private final int[] starts;
+
+	/** The number of times each word was found. */
+	private final int[] frequencies;
+
+	/** The location id of each posting, sorted by id within a word. */
+	private final int[] locations;
+
+	/** The number of positions of each posting. */
+	private final int[] counts;
+
+	/** The compressed positions of each posting. */
+	private final PositionList[] positions;
+
+	/** The location paths and totals of the snapshot. */
+	private final DocumentTable documents;
+
+	/** The total number of word occurrences. */
+	private final long tokens;
+
+	/**
+	 * Initializes a snapshot from a sorted map of words to location ids to
+	 * positions. The positions and document table are copied, so later changes to
+	 * the source index are not visible in the snapshot. Removed locations and
+	 * words found only in them are left out, and the remaining ids are renumbered
+	 * densely.
+	 *
+	 * @param index     a sorted map of words to location ids to positions
+	 * @param documents the table used to resolve location ids
+	 */
+	FrozenInvertedIndex(SortedMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents) {
+		this(index, documents, false);
+	}
+
+	/**
+	 * Initializes a snapshot from a sorted map of words to location ids to
+	 * positions. A shared snapshot keeps the location ids of the source and
+	 * resolves them with the given table itself, as the segments of a
+	 * {@link SegmentedInvertedIndex} do; searches then only read the table in the
+	 * ways {@link DocumentTable} allows without a lock.
+	 *
+	 * @param index     a sorted map of words to location ids to positions
+	 * @param documents the table used to resolve location ids
+	 * @param shared    whether to share the table instead of copying it
+	 */
+	FrozenInvertedIndex(SortedMap<String, TreeMap<Integer, PositionList>> index, DocumentTable documents,
+			boolean shared) {
+		int[] remap = null;
+		if (shared) {
+			this.documents = documents;
+		} else if (documents.count() < documents.size()) {
+			remap = new int[documents.size()];
+			this.documents = documents.compact(remap);
+		} else {
+			this.documents = documents.copy();
+		}
+
+		int wordCount = 0;
+		int postings = 0;
+		for (TreeMap<Integer, PositionList> word : index.values()) {
+			int live = word.size();
+			if (remap != null || shared) {
+				for (Integer document : word.keySet()) {
+					if (shared ? documents.isRemoved(document) : remap[document] < 0) {
+						live--;
+					}
+				}
+			}
+			postings += live;
+			wordCount += live > 0 ? 1 : 0;
+		}
+
+		this.words = new String[wordCount];
+		this.starts = new int[wordCount + 1];
+		this.frequencies = new int[wordCount];
+		this.locations = new int[postings];
+		this.counts = new int[postings];
+		this.positions = new PositionList[postings];
+
+		int word = 0;
+		int posting = 0;
+		long total = 0;
+		for (Map.Entry<String, TreeMap<Integer, PositionList>> entry : index.entrySet()) {
+			int start = posting;
+			for (Map.Entry<Integer, PositionList> location : entry.getValue().entrySet()) {
+				int document = remap == null ? location.getKey() : remap[location.getKey()];
+				if (document < 0 || shared && documents.isRemoved(document)) {
+					continue;
+				}
+				locations[posting] = document;
+				counts[posting] = location.getValue().size();
+				positions[posting] = location.getValue().copy();
+				frequencies[word] += counts[posting];
+				posting++;
+			}
+			if (posting == start) {
+				continue;
+			}
+			words[word] = entry.getKey();
+			starts[word] = start;
+			total += frequencies[word];
+			word++;
+		}
+		starts[word] = posting;
+		this.tokens = total;
+	}
+
+	/**
+	 * Initializes a snapshot from arrays read back from an index file. The arrays
+	 * are used directly and must not be modified afterwards.
+	 *
+	 * @param words       sorted array of every word
+	 * @param starts      the offset of the first posting of each word, plus one
+	 *                    final end offset
+	 * @param frequencies the number of times each word was found
+	 * @param locations   the location id of each posting
+	 * @param counts      the number of positions of each posting
+	 * @param positions   the compressed positions of each posting
+	 * @param documents   the location paths and totals
+	 * @param tokens      the total number of word occurrences
+	 *
+	 * @see IndexFile#read(Path)
+	 */
+	FrozenInvertedIndex(String[] words, int[] starts, int[] frequencies, int[] locations, int[] counts,
+			PositionList[] positions, DocumentTable documents, long tokens) {
+		this.words = words;
+		this.starts = starts;
+		this.frequencies = frequencies;
+		this.locations = locations;
+		this.counts = counts;
+		this.positions = positions;
+		this.documents = documents;
+		this.tokens = tokens;
+	}
+
+	/**
+	 * Writes the snapshot to a binary index file, which can be loaded again with
+	 * {@link IndexFile#read(Path)} instead of rebuilding the index.
+	 *
+	 * @param path the file to write
+	 * @throws IOException if unable to write the file
+	 */
+	public void save(Path path) throws IOException {
+		IndexFile.write(path, words, starts, frequencies, locations, positions, documents, tokens);
+	}
+
+	/**
+	 * Copies the snapshot into a new mutable index, which can then be merged into
+	 * an index of any kind. The compressed positions are shared until either copy
+	 * adds to them.
+	 *
+	 * @return a mutable copy of the snapshot
+	 */
+	public InvertedIndex toIndex() {
+		InvertedIndex index = new InvertedIndex(documents.copy());
+		for (int word = 0; word < words.length; word++) {
+			TreeMap<Integer, PositionList> postings = new TreeMap<>();
+			for (int posting = starts[word]; posting < starts[word + 1]; posting++) {
+				postings.put(locations[posting], positions[posting].copy());
+			}
+			index.putPostings(words[word], postings, frequencies[word]);
+		}
+		return index;
+	}
+
+	/**
+	 * Merges snapshots that share one document table into a single shared
+	 * snapshot, walking their sorted words side by side. Postings of the same word
+	 * and location in more than one snapshot are combined, and postings of the
+	 * removed location ids are left out. Only the snapshots and the removed ids are
+	 * read, so no lock is needed while merging.
+	 *
+	 * @param segments  the snapshots to merge
+	 * @param removed   the location ids to leave out
+	 * @param documents the table shared by the snapshots
+	 * @return a shared snapshot of every live posting of the snapshots
+	 */
+	static FrozenInvertedIndex merge(List<FrozenInvertedIndex> segments, BitSet removed, DocumentTable documents) {
+		int wordCount = 0;
+		int postingCount = 0;
+		for (FrozenInvertedIndex segment : segments) {
+			wordCount += segment.words.length;
+			postingCount += segment.locations.length;
+		}
+
+		String[] words = new String[wordCount];
+		int[] starts = new int[wordCount + 1];
+		int[] frequencies = new int[wordCount];
+		int[] locations = new int[postingCount];
+		int[] counts = new int[postingCount];
+		PositionList[] positions = new PositionList[postingCount];
+
+		int[] next = new int[segments.size()];
+		PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, segments.size()),
+				(a, b) -> segments.get(a).words[next[a]].compareTo(segments.get(b).words[next[b]]));
+		for (int i = 0; i < segments.size(); i++) {
+			if (segments.get(i).words.length > 0) {
+				heads.add(i);
+			}
+		}
+
+		int word = 0;
+		int posting = 0;
+		long tokens = 0;
+		ArrayList<Integer> matching = new ArrayList<>();
+		int[] cursors = new int[segments.size()];
+		while (!heads.isEmpty()) {
+			String current = segments.get(heads.peek()).words[next[heads.peek()]];
+			matching.clear();
+			while (!heads.isEmpty() && segments.get(heads.peek()).words[next[heads.peek()]].equals(current)) {
+				int i = heads.poll();
+				matching.add(i);
+				cursors[i] = segments.get(i).starts[next[i]];
+			}
+
+			int start = posting;
+			while (true) {
+				int document = Integer.MAX_VALUE;
+				for (int i : matching) {
+					FrozenInvertedIndex segment = segments.get(i);
+					if (cursors[i] < segment.starts[next[i] + 1]) {
+						document = Math.min(document, segment.locations[cursors[i]]);
+					}
+				}
+				if (document == Integer.MAX_VALUE) {
+					break;
+				}
+
+				PositionList combined = null;
+				for (int i : matching) {
+					FrozenInvertedIndex segment = segments.get(i);
+					if (cursors[i] < segment.starts[next[i] + 1] && segment.locations[cursors[i]] == document) {
+						if (combined == null) {
+							combined = segment.positions[cursors[i]];
+						} else {
+							combined = combined.copy();
+							combined.addAll(segment.positions[cursors[i]]);
+							combined.compress();
+						}
+						cursors[i]++;
+					}
+				}
+				if (removed.get(document)) {
+					continue;
+				}
+				locations[posting] = document;
+				counts[posting] = combined.size();
+				positions[posting] = combined;
+				frequencies[word] += combined.size();
+				posting++;
+			}
+
+			if (posting > start) {
+				words[word] = current;
+				starts[word] = start;
+				tokens += frequencies[word];
+				word++;
+			}
+
+			for (int i : matching) {
+				if (++next[i] < segments.get(i).words.length) {
+					heads.add(i);
+				}
+			}
+		}
+		starts[word] = posting;
+
+		return new FrozenInvertedIndex(Arrays.copyOf(words, word), Arrays.copyOf(starts, word + 1),
+				Arrays.copyOf(frequencies, word), Arrays.copyOf(locations, posting), Arrays.copyOf(counts, posting),
+				Arrays.copyOf(positions, posting), documents, tokens);
+	}
+
+	/**
+	 * Renumbers the location ids of a snapshot, such as a merged snapshot that
+	 * shares a document table, to resolve them with another table instead. The
+	 * words and positions are shared with this snapshot.
+	 *
+	 * @param remap     the new id of each old id; must keep the ids of each word in
+	 *                  order and map every id in the snapshot to a new id
+	 * @param documents the table the new ids belong to
+	 * @return a snapshot that resolves location ids with the other table
+	 */
+	FrozenInvertedIndex renumber(int[] remap, DocumentTable documents) {
+		int[] renumbered = new int[locations.length];
+		for (int posting = 0; posting < locations.length; posting++) {
+			renumbered[posting] = remap[locations[posting]];
+		}
+		return new FrozenInvertedIndex(words, starts, frequencies, renumbered, counts, positions, documents, tokens);
+	}
+
+	/**
+	 * Returns the number of postings in the snapshot.
+	 *
+	 * @return number of word and location pairs stored
+	 */
+	int postingCount() {
+		return locations.length;
+	}
+
+	/**
+	 * Returns the number of postings of a word whose location has not been
+	 * removed from the document table.
+	 *
+	 * @param word the word to look for
+	 * @return the number of live postings
+	 */
+	int liveLocations(String word) {
+		int index = find(word);
+		if (index < 0) {
+			return 0;
+		}
+		if (!documents.hasPending()) {
+			return starts[index + 1] - starts[index];
+		}
+		int count = 0;
+		for (int posting = starts[index]; posting < starts[index + 1]; posting++) {
+			if (!documents.isRemoved(locations[posting])) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of positions of a word in locations that have not been
+	 * removed from the document table.
+	 *
+	 * @param word the word to look for
+	 * @return the number of live positions
+	 */
+	int liveOccurrences(String word) {
+		int index = find(word);
+		if (index < 0) {
+			return 0;
+		}
+		if (!documents.hasPending()) {
+			return frequencies[index];
+		}
+		int count = 0;
+		for (int posting = starts[index]; posting < starts[index + 1]; posting++) {
+			if (!documents.isRemoved(locations[posting])) {
+				count += counts[posting];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of positions stored for locations that have not been
+	 * removed from the document table.
+	 *
+	 * @return the number of live positions
+	 */
+	long liveTokens() {
+		if (!documents.hasPending()) {
+			return tokens;
+		}
+		long count = 0;
+		for (int posting = 0; posting < locations.length; posting++) {
+			if (!documents.isRemoved(locations[posting])) {
+				count += counts[posting];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds every word with a posting in a location that has not been removed to a
+	 * collection.
+	 *
+	 * @param live the collection to add the words to
+	 */
+	void liveWords(Collection<String> live) {
+		for (int word = 0; word < words.length; word++) {
+			for (int posting = starts[word]; posting < starts[word + 1]; posting++) {
+				if (!documents.isRemoved(locations[posting])) {
+					live.add(words[word]);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of a word in the word array.
+	 *
+	 * @param word the word to look for
+	 * @return the index of the word, or a negative value if it is not stored
+	 */
+	private int find(String word) {
+		return Arrays.binarySearch(words, word);
+	}
+
+	/**
+	 * Returns the posting offset of a location within a word.
+	 *
+	 * @param word     the index of the word
+	 * @param document the location id to look for
+	 * @return the posting offset, or a negative value if the location is not stored
+	 */
+	private int find(int word, int document) {
+		if (word < 0 || document < 0) {
+			return -1;
+		}
+		return Arrays.binarySearch(locations, starts[word], starts[word + 1], document);
+	}
+
+	/**
+	 * updates search results with every posting of a word
+	 *
+	 * @param word          the index of the word
+	 * @param lookup        a map of location ids to their search results
+	 * @param searchResults the list of search results
+	 */
+	private void searchHelper(int word, HashMap<Integer, SearchResult> lookup,
+			ArrayList<SearchResult> searchResults) {
+		for (int posting = starts[word]; posting < starts[word + 1]; posting++) {
+			if (documents.isRemoved(locations[posting])) {
+				continue;
+			}
+			SearchResult result = lookup.get(locations[posting]);
+			if (result != null) {
+				result.addCount(counts[posting]);
+			} else {
+				SearchResult newMem = new SearchResult(locations[posting], counts[posting], documents);
+				lookup.put(locations[posting], newMem);
+				searchResults.add(newMem);
+			}
+		}
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		for (String queryWord : query) {
+			exactSearch(queryWord, lookup, searchResults);
+		}
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	/**
+	 * adds the locations of a word that exactly matches the query word to the
+	 * search results.
+	 *
+	 * @param queryWord     a word to search for
+	 * @param lookup        a map of location ids to their search results
+	 * @param searchResults the list of search results
+	 */
+	void exactSearch(String queryWord, HashMap<Integer, SearchResult> lookup,
+			ArrayList<SearchResult> searchResults) {
+		int word = find(queryWord);
+		if (word >= 0) {
+			searchHelper(word, lookup, searchResults);
+		}
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		for (String queryWord : query) {
+			partialSearch(queryWord, lookup, searchResults);
+		}
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	/**
+	 * adds the locations of every word that starts with the query word to the
+	 * search results.
+	 *
+	 * @param queryWord     a word to search for
+	 * @param lookup        a map of location ids to their search results
+	 * @param searchResults the list of search results
+	 */
+	void partialSearch(String queryWord, HashMap<Integer, SearchResult> lookup,
+			ArrayList<SearchResult> searchResults) {
+		int word = find(queryWord);
+		if (word < 0) {
+			word = -(word + 1);
+		}
+		while (word < words.length && words[word].startsWith(queryWord)) {
+			searchHelper(word, lookup, searchResults);
+			word++;
+		}
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			writer.write("{");
+			for (int word = 0; word < words.length; word++) {
+				TreeMap<String, PositionList> resolved = new TreeMap<>();
+				for (int posting = starts[word]; posting < starts[word + 1]; posting++) {
+					resolved.put(documents.getPath(locations[posting]), positions[posting]);
+				}
+
+				writer.write(System.lineSeparator());
+				JSONWriter.indent(1, writer);
+				writer.write("\"");
+				writer.write(words[word]);
+				writer.write("\"");
+				writer.write(": {");
+				JSONWriter.nestedObject(resolved, writer, 1);
+				if (word < words.length - 1) {
+					writer.write(",");
+				}
+			}
+			writer.write(System.lineSeparator());
+			writer.write("}");
+		}
+	}
+
+	@Override
+	public void outPutLocationMap(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			JSONWriter.asObject(documents.toMap(), writer, 0);
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return find(word) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String path) {
+		return find(find(word), documents.getId(path)) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String path, int position) {
+		int posting = find(find(word), documents.getId(path));
+		return posting >= 0 && positions[posting].contains(position);
+	}
+
+	@Override
+	public boolean contains(Path path) {
+		int document = documents.getId(path.toString());
+		return document >= 0 && documents.getTerms(document) > 0;
+	}
+
+	@Override
+	public int wordCount() {
+		return words.length;
+	}
+
+	@Override
+	public int pathCount(String word) {
+		int index = find(word);
+		return index >= 0 ? starts[index + 1] - starts[index] : 0;
+	}
+
+	@Override
+	public int positionCount(String word, String path) {
+		int posting = find(find(word), documents.getId(path));
+		return posting >= 0 ? counts[posting] : 0;
+	}
+
+	@Override
+	public int wordCount(String word) {
+		int index = find(word);
+		return index >= 0 ? frequencies[index] : 0;
+	}
+
+	@Override
+	public int pathCount(Path path) {
+		int document = documents.getId(path.toString());
+		return document >= 0 ? documents.getTerms(document) : 0;
+	}
+
+	@Override
+	public long tokenCount() {
+		return tokens;
+	}
+
+	@Override
+	public int tokenCount(Path path) {
+		int document = documents.getId(path.toString());
+		return document >= 0 ? documents.getTotal(document) : 0;
+	}
+
+	@Override
+	public int locationCount() {
+		return documents.size();
+	}
+
+	/**
+	 * Returns a string representation of the snapshot
+	 */
+	@Override
+	public String toString() {
+		TreeMap<String, TreeMap<String, PositionList>> resolved = new TreeMap<>();
+		for (int word = 0; word < words.length; word++) {
+			TreeMap<String, PositionList> locations = new TreeMap<>();
+			for (int posting = starts[word]; posting < starts[word + 1]; posting++) {
+				locations.put(documents.getPath(this.locations[posting]), positions[posting]);
+			}
+			resolved.put(words[word], locations);
+		}
+		return resolved.toString();
+	}
+}
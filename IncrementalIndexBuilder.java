@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps a saved index up to date with a corpus, re-parsing only the files that
+ * were added or modified since the index was saved, and dropping the files that
+ * were removed. The saved index and its {@link IndexManifest} are loaded,
+ * updated and written back, so the cost of a run is proportional to the number
+ * of changed files rather than the size of the corpus.
+ *
+ * Files that fail to parse are left out of the manifest, so they are retried by
+ * the next run. The index and manifest are written to temporary files and moved
+ * over the saved ones, index first: a run interrupted between the two moves
+ * leaves a newer index with an older manifest, and the next run re-parses every
+ * file that manifest does not match.
+ */
+public class IncrementalIndexBuilder {
+
+	/**
+	 * Updates an index from a directory and a saved index, then saves the result
+	 * over the saved index. If there is no saved index or manifest yet, every text
+	 * file is parsed.
+	 *
+	 * @param directory the directory or file to index
+	 * @param index     an empty index to load and update
+	 * @param saved     the saved index file; its manifest is stored beside it
+	 * @return a frozen snapshot of the updated index, as saved
+	 * @throws IOException if unable to read the corpus or save the index
+	 */
+	public static FrozenInvertedIndex update(Path directory, InvertedIndex index, Path saved) throws IOException {
+		return update(directory, index, saved, null);
+	}
+
+	/**
+	 * Updates an index from a directory and a saved index, parsing the changed
+	 * files with a work queue, then saves the result over the saved index. Waits
+	 * for all work in the queue to finish.
+	 *
+	 * @param directory the directory or file to index
+	 * @param index     an empty index to load and update
+	 * @param saved     the saved index file; its manifest is stored beside it
+	 * @param queue     the work queue to parse files with
+	 * @return a frozen snapshot of the updated index, as saved
+	 * @throws IOException if unable to read the corpus or save the index
+	 */
+	public static FrozenInvertedIndex update(Path directory, ConcurrentIndex index, Path saved,
+			WorkQueue queue) throws IOException {
+		return update(directory, (WritableIndex) index, saved, queue);
+	}
+
+	/**
+	 * Loads the saved index, removes the stale locations and purges their
+	 * postings while the changed files are parsed, then saves the index and
+	 * manifest.
+	 *
+	 * @param directory the directory or file to index
+	 * @param index     an empty index to load and update; a
+	 *                  {@link ConcurrentIndex} if a queue is given, or an
+	 *                  {@link InvertedIndex} otherwise
+	 * @param saved     the saved index file
+	 * @param queue     the work queue to parse files with, or null to parse them on
+	 *                  the calling thread
+	 * @return a frozen snapshot of the updated index, as saved
+	 * @throws IOException if unable to read the corpus or save the index
+	 */
+	private static FrozenInvertedIndex update(Path directory, WritableIndex index, Path saved, WorkQueue queue)
+			throws IOException {
+		Path manifestPath = IndexManifest.of(saved);
+		IndexManifest manifest = new IndexManifest();
+
+		if (Files.exists(saved) && Files.exists(manifestPath)) {
+			try {
+				IndexManifest previous = IndexManifest.read(manifestPath);
+				index.merge(IndexFile.read(saved).toIndex());
+				manifest = previous;
+			} catch (IOException e) {
+				System.out.println("Could not load saved index, rebuilding: " + saved);
+			}
+		}
+
+		ArrayList<Path> files = new ArrayList<>();
+		InvertedIndexBuilder.listFiles(directory, files);
+		IndexManifest.Changes changes = manifest.update(files);
+
+		// added files are removed too, in case a newer index was saved without its manifest
+		ArrayList<String> stale = new ArrayList<>(changes.removed);
+		ArrayList<Path> changed = new ArrayList<>(changes.added);
+		for (Path file : changes.added) {
+			stale.add(file.toString());
+		}
+		for (Path file : changes.modified) {
+			stale.add(file.toString());
+			changed.add(file);
+		}
+		index.removeAll(stale);
+
+		if (queue != null) {
+			// waits for just the compaction and the files of this update
+			WorkQueue.TaskGroup group = queue.newGroup();
+			LinkedHashMap<Path, CompletableFuture<Void>> adds = new LinkedHashMap<>();
+			try {
+				try {
+					group.execute(index::compact);
+				} catch (RejectedExecutionException e) {
+					index.compact();
+				}
+				for (Path file : changed) {
+					var task = new ThreadSafeInvertedIndexBuilder.AddTask(file, (ConcurrentIndex) index);
+					try {
+						adds.put(file, group.submit(() -> {
+							task.add();
+							return null;
+						}));
+					} catch (RejectedExecutionException e) {
+						adds.put(file, CompletableFuture.failedFuture(e));
+					}
+				}
+			} finally {
+				group.finish();
+			}
+			for (Map.Entry<Path, CompletableFuture<Void>> add : adds.entrySet()) {
+				if (add.getValue().isCompletedExceptionally()) {
+					failed(add.getKey(), manifest);
+				}
+			}
+		} else {
+			index.compact();
+			for (Path file : changed) {
+				try {
+					InvertedIndexBuilder.stemFile(file, (InvertedIndex) index);
+				} catch (IOException e) {
+					failed(file, manifest);
+				}
+			}
+		}
+
+		index.compress();
+		FrozenInvertedIndex frozen = index.freeze();
+		Path savedTemp = temporary(saved);
+		Path manifestTemp = temporary(manifestPath);
+		frozen.save(savedTemp);
+		manifest.write(manifestTemp);
+		replace(savedTemp, saved);
+		replace(manifestTemp, manifestPath);
+		return frozen;
+	}
+
+	/**
+	 * Reports a file that could not be indexed, and forgets it in the manifest so
+	 * the next run tries it again.
+	 *
+	 * @param file     the file that could not be indexed
+	 * @param manifest the manifest being updated
+	 */
+	private static void failed(Path file, IndexManifest manifest) {
+		System.out.println("Could not build local index from file: " + file);
+		manifest.forget(file);
+	}
+
+	/**
+	 * Returns the temporary file a file is written to before it replaces the file.
+	 *
+	 * @param file the file to write
+	 * @return a temporary file beside it
+	 */
+	private static Path temporary(Path file) {
+		return file.resolveSibling(file.getFileName() + ".tmp");
+	}
+
+	/**
+	 * Moves a temporary file over the file it replaces, atomically if the file
+	 * system supports it.
+	 *
+	 * @param temporary the written temporary file
+	 * @param file      the file to replace
+	 * @throws IOException if unable to move the file
+	 */
+	private static void replace(Path temporary, Path file) throws IOException {
+		try {
+			Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
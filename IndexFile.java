@@ -0,0 +1,428 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes the binary index file format, so an index can be saved after
+ * building and loaded again without walking and stemming the corpus. All values
+ * are big-endian. The file is laid out as:
+ *
+ * <pre>
+ * header      magic, version, word count, location count, posting count, token count
+ * locations   for each location id: path, word total, distinct word count
+ * postings    for each word, for each location: id, position count, encoded positions
+ * dictionary  for each word in sorted order: word, frequency, posting count, offset of its first posting
+ * footer      offset of the postings, offset of the dictionary, magic
+ * </pre>
+ *
+ * Strings are written as a byte length followed by UTF-8 bytes, and positions
+ * as a byte length followed by the delta + varint bytes of {@link PositionList}.
+ * The footer lets a reader find the dictionary without reading the postings.
+ */
+public class IndexFile {
+
+	/** The magic number at the start and end of an index file ("IIDX"). */
+	static final int MAGIC = 0x49494458;
+
+	/** The version of the format written. */
+	static final int VERSION = 1;
+
+	/** The size of the header in bytes. */
+	static final int HEADER_SIZE = 32;
+
+	/** The size of the footer in bytes. */
+	static final int FOOTER_SIZE = 20;
+
+	/**
+	 * Writes a snapshot of an index to a file.
+	 *
+	 * @param path        the file to write
+	 * @param words       sorted array of every word
+	 * @param starts      the offset of the first posting of each word, plus one
+	 *                    final end offset
+	 * @param frequencies the number of times each word was found
+	 * @param locations   the location id of each posting
+	 * @param positions   the compressed positions of each posting
+	 * @param documents   the location paths and totals
+	 * @param tokens      the total number of word occurrences
+	 * @throws IOException if unable to write the file
+	 */
+	static void write(Path path, String[] words, int[] starts, int[] frequencies, int[] locations,
+			PositionList[] positions, DocumentTable documents, long tokens) throws IOException {
+		try (CountingOutputStream counter = new CountingOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+				DataOutputStream out = new DataOutputStream(counter);) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(words.length);
+			out.writeInt(documents.size());
+			out.writeLong(locations.length);
+			out.writeLong(tokens);
+
+			for (int id = 0; id < documents.size(); id++) {
+				writeString(out, documents.getPath(id));
+				out.writeInt(documents.getTotal(id));
+				out.writeInt(documents.getTerms(id));
+			}
+
+			long postingsOffset = counter.count;
+			long[] offsets = new long[words.length];
+			for (int word = 0; word < words.length; word++) {
+				offsets[word] = counter.count;
+				for (int posting = starts[word]; posting < starts[word + 1]; posting++) {
+					byte[] encoded = positions[posting].encoded();
+					out.writeInt(locations[posting]);
+					out.writeInt(positions[posting].size());
+					out.writeInt(encoded.length);
+					out.write(encoded);
+				}
+			}
+
+			long dictionaryOffset = counter.count;
+			for (int word = 0; word < words.length; word++) {
+				writeString(out, words[word]);
+				out.writeInt(frequencies[word]);
+				out.writeInt(starts[word + 1] - starts[word]);
+				out.writeLong(offsets[word]);
+			}
+
+			out.writeLong(postingsOffset);
+			out.writeLong(dictionaryOffset);
+			out.writeInt(MAGIC);
+		}
+	}
+
+	/**
+	 * Reads an index file into an immutable snapshot.
+	 *
+	 * @param path the file to read
+	 * @return the index stored in the file
+	 * @throws IOException if unable to read the file, or if it is not a valid
+	 *                     index file
+	 */
+	public static FrozenInvertedIndex read(Path path) throws IOException {
+		try (DataInputStream in = open(path);) {
+			int wordCount = readHeader(in, path);
+			int documentCount = in.readInt();
+			int postingCount = checkedCount(in.readLong(), path);
+			long tokens = in.readLong();
+
+			DocumentTable documents = readDocuments(in, documentCount);
+
+			int[] locations = new int[postingCount];
+			int[] counts = new int[postingCount];
+			PositionList[] positions = new PositionList[postingCount];
+			for (int posting = 0; posting < postingCount; posting++) {
+				locations[posting] = in.readInt();
+				counts[posting] = in.readInt();
+				byte[] encoded = new byte[in.readInt()];
+				in.readFully(encoded);
+				positions[posting] = new PositionList(encoded, counts[posting]);
+			}
+
+			String[] words = new String[wordCount];
+			int[] starts = new int[wordCount + 1];
+			int[] frequencies = new int[wordCount];
+			for (int word = 0; word < wordCount; word++) {
+				words[word] = readString(in);
+				frequencies[word] = in.readInt();
+				starts[word + 1] = starts[word] + in.readInt();
+				in.readLong();
+			}
+
+			in.readLong();
+			in.readLong();
+			if (starts[wordCount] != postingCount || in.readInt() != MAGIC) {
+				throw new IOException("Corrupt index file: " + path);
+			}
+
+			return new FrozenInvertedIndex(words, starts, frequencies, locations, counts, positions, documents,
+					tokens);
+		}
+	}
+
+	/**
+	 * Reads and checks the magic number and version at the start of a file.
+	 *
+	 * @param in   the stream positioned at the start of the file
+	 * @param path the file being read
+	 * @return the number of words in the file
+	 * @throws IOException if the file is not an index file of a supported version
+	 */
+	static int readHeader(DataInputStream in, Path path) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not an index file: " + path);
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported index file version " + version + ": " + path);
+		}
+		return in.readInt();
+	}
+
+	/**
+	 * Reads the location table that follows the header.
+	 *
+	 * @param in    the stream positioned after the header
+	 * @param count the number of locations
+	 * @return the table of locations
+	 * @throws IOException if unable to read the file
+	 */
+	static DocumentTable readDocuments(DataInputStream in, int count) throws IOException {
+		DocumentTable documents = new DocumentTable();
+		for (int id = 0; id < count; id++) {
+			documents.add(readString(in));
+			documents.setTotal(id, in.readInt());
+			documents.addTerms(id, in.readInt());
+		}
+		return documents;
+	}
+
+	/**
+	 * Checks that a count stored as a long fits in an array.
+	 *
+	 * @param count the stored count
+	 * @param path  the file being read
+	 * @return the count as an int
+	 * @throws IOException if the count is negative or too large
+	 */
+	static int checkedCount(long count, Path path) throws IOException {
+		if (count < 0 || count > Integer.MAX_VALUE - 8) {
+			throw new IOException("Corrupt index file: " + path);
+		}
+		return (int) count;
+	}
+
+	/**
+	 * Writes a string as its byte length followed by its UTF-8 bytes.
+	 *
+	 * @param out  the stream to write to
+	 * @param text the string to write
+	 * @throws IOException if unable to write
+	 */
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+	 *
+	 * @param in the stream to read from
+	 * @return the string read
+	 * @throws IOException if unable to read
+	 */
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Opens an index file for reading from the start.
+	 *
+	 * @param path the file to open
+	 * @return a buffered stream over the file
+	 * @throws IOException if unable to open the file
+	 */
+	static DataInputStream open(Path path) throws IOException {
+		InputStream in = Files.newInputStream(path);
+		return new DataInputStream(new BufferedInputStream(in, 1 << 16));
+	}
+
+	/**
+	 * Opens a stream over an index file channel from a file offset. The stream
+	 * shares the position of the channel, so only one stream may be read at a time.
+	 *
+	 * @param channel  the open file channel
+	 * @param position the file offset to start reading at
+	 * @return a buffered stream over the channel
+	 * @throws IOException if unable to set the position
+	 */
+	static DataInputStream open(FileChannel channel, long position) throws IOException {
+		channel.position(position);
+		return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+	}
+
+	/**
+	 * Writes an index file one word at a time, in sorted word order, so an index
+	 * can be written without holding all of its postings in memory. The dictionary
+	 * is buffered in a temporary file beside the index file and appended once every
+	 * word has been written, and the counts in the header are filled in when the
+	 * writer is closed.
+	 */
+	static class StreamingWriter implements Closeable {
+
+		/** The file being written. */
+		private final Path path;
+
+		/** The temporary file the dictionary is buffered in. */
+		private final Path dictionaryPath;
+
+		/** Counts the bytes written to the file. */
+		private final CountingOutputStream counter;
+
+		/** The stream over the file. */
+		private final DataOutputStream out;
+
+		/** The stream over the temporary dictionary file. */
+		private final DataOutputStream dictionary;
+
+		/** The location paths and totals written to the file. */
+		private final DocumentTable documents;
+
+		/** The file offset of the distinct word count of each location. */
+		private final long[] termOffsets;
+
+		/** The number of words written for each location. */
+		private final int[] terms;
+
+		/** The file offset of the postings. */
+		private final long postingsOffset;
+
+		/** The number of words written. */
+		private int words;
+
+		/** The number of postings written. */
+		private long postings;
+
+		/** The number of positions written. */
+		private long tokens;
+
+		/**
+		 * Starts an index file by writing its header and location table.
+		 *
+		 * @param path      the file to write
+		 * @param documents the locations every posting refers to
+		 * @throws IOException if unable to write the file
+		 */
+		StreamingWriter(Path path, DocumentTable documents) throws IOException {
+			this.path = path;
+			this.dictionaryPath = path.resolveSibling(path.getFileName() + ".dictionary");
+			this.counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+			this.out = new DataOutputStream(counter);
+			this.dictionary = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(dictionaryPath), 1 << 16));
+			this.documents = documents;
+			this.termOffsets = new long[documents.size()];
+			this.terms = new int[documents.size()];
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(0);
+			out.writeInt(documents.size());
+			out.writeLong(0);
+			out.writeLong(0);
+
+			for (int id = 0; id < documents.size(); id++) {
+				writeString(out, documents.getPath(id));
+				out.writeInt(documents.getTotal(id));
+				termOffsets[id] = counter.count;
+				out.writeInt(documents.getTerms(id));
+			}
+			this.postingsOffset = counter.count;
+		}
+
+		/**
+		 * Writes the postings of a word. Words must be written in increasing order.
+		 *
+		 * @param word      the word
+		 * @param frequency the number of positions across all postings
+		 * @param locations the location id of each posting, in increasing order
+		 * @param positions the positions of each posting
+		 * @param count     the number of postings
+		 * @throws IOException if unable to write the file
+		 */
+		void add(String word, int frequency, int[] locations, PositionList[] positions, int count)
+				throws IOException {
+			writeString(dictionary, word);
+			dictionary.writeInt(frequency);
+			dictionary.writeInt(count);
+			dictionary.writeLong(counter.count);
+
+			for (int posting = 0; posting < count; posting++) {
+				byte[] encoded = positions[posting].encoded();
+				out.writeInt(locations[posting]);
+				out.writeInt(positions[posting].size());
+				out.writeInt(encoded.length);
+				out.write(encoded);
+				terms[locations[posting]]++;
+			}
+
+			words++;
+			postings += count;
+			tokens += frequency;
+		}
+
+		/**
+		 * Appends the dictionary and footer, then fills in the header counts and any
+		 * location whose distinct word count differs from the one written.
+		 *
+		 * @throws IOException if unable to write the file
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				dictionary.close();
+				long dictionaryOffset = counter.count;
+				Files.copy(dictionaryPath, out);
+				out.writeLong(postingsOffset);
+				out.writeLong(dictionaryOffset);
+				out.writeInt(MAGIC);
+			} finally {
+				out.close();
+				Files.deleteIfExists(dictionaryPath);
+			}
+
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);) {
+				channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, words), 2 * Integer.BYTES);
+				channel.write(ByteBuffer.allocate(2 * Long.BYTES).putLong(0, postings).putLong(Long.BYTES, tokens),
+						4 * Integer.BYTES);
+				for (int id = 0; id < terms.length; id++) {
+					if (terms[id] != documents.getTerms(id)) {
+						channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, terms[id]), termOffsets[id]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes written through it, before any buffering, as a long, since files may be larger
+	 * than {@link DataOutputStream#size()} can report.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+			this.count = 0;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeMap;
+
+/**
+ * Records the size, modification time and SHA-256 hash of every file in an index,
+ * so a later run can tell which files were added, modified or removed since the
+ * index was saved. A file whose size and modification time are unchanged is
+ * assumed unchanged without reading it; otherwise its hash decides.
+ *
+ * The manifest is saved as a text file next to the index file, with one line
+ * per file: hash, size, modification time in milliseconds, and path, separated
+ * by tabs.
+ */
+public class IndexManifest {
+
+	/** The extension added to the index file name to name its manifest. */
+	public static final String EXTENSION = ".manifest";
+
+	/** Map of file paths to their recorded state. */
+	private final TreeMap<String, Entry> files;
+
+	/**
+	 * Initializes an empty manifest
+	 */
+	public IndexManifest() {
+		files = new TreeMap<>();
+	}
+
+	/**
+	 * Returns the manifest file that belongs to an index file.
+	 *
+	 * @param index the index file
+	 * @return the path of its manifest
+	 */
+	public static Path of(Path index) {
+		return index.resolveSibling(index.getFileName() + EXTENSION);
+	}
+
+	/**
+	 * Reads a manifest file.
+	 *
+	 * @param path the manifest file
+	 * @return the manifest read
+	 * @throws IOException if unable to read the file, or if it is malformed
+	 */
+	public static IndexManifest read(Path path) throws IOException {
+		IndexManifest manifest = new IndexManifest();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);) {
+			String line = reader.readLine();
+			while (line != null) {
+				String[] fields = line.split("\t", 4);
+				if (fields.length != 4) {
+					throw new IOException("Malformed manifest line: " + line);
+				}
+				try {
+					manifest.files.put(fields[3],
+							new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Malformed manifest line: " + line, e);
+				}
+				line = reader.readLine();
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest to a file.
+	 *
+	 * @param path the manifest file
+	 * @throws IOException if unable to write the file
+	 */
+	public void write(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			for (var file : files.entrySet()) {
+				Entry entry = file.getValue();
+				writer.write(entry.hash);
+				writer.write("\t");
+				writer.write(Long.toString(entry.size));
+				writer.write("\t");
+				writer.write(Long.toString(entry.modified));
+				writer.write("\t");
+				writer.write(file.getKey());
+				writer.write(System.lineSeparator());
+			}
+		}
+	}
+
+	/**
+	 * Compares the recorded files against the current text files, and records the
+	 * current state of every file that was added or modified. Files that are no
+	 * longer present are forgotten.
+	 *
+	 * @param current the text files currently in the corpus
+	 * @return the files that were added, modified and removed
+	 * @throws IOException if unable to read a file
+	 */
+	public Changes update(Iterable<Path> current) throws IOException {
+		Changes changes = new Changes();
+		HashSet<String> seen = new HashSet<>();
+
+		for (Path file : current) {
+			String location = file.toString();
+			seen.add(location);
+
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			long size = attributes.size();
+			long modified = attributes.lastModifiedTime().toMillis();
+
+			Entry entry = files.get(location);
+			if (entry != null && entry.size == size && entry.modified == modified) {
+				continue;
+			}
+
+			String hash = hash(file);
+			if (entry == null) {
+				changes.added.add(file);
+			} else if (entry.size != size || !entry.hash.equals(hash)) {
+				changes.modified.add(file);
+			}
+			files.put(location, new Entry(size, modified, hash));
+		}
+
+		var iterator = files.keySet().iterator();
+		while (iterator.hasNext()) {
+			String location = iterator.next();
+			if (!seen.contains(location)) {
+				changes.removed.add(location);
+				iterator.remove();
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Forgets a recorded file, such as one that could not be indexed, so the next
+	 * update reports it as added.
+	 *
+	 * @param file the file to forget
+	 */
+	public void forget(Path file) {
+		files.remove(file.toString());
+	}
+
+	/**
+	 * Returns the number of files recorded.
+	 *
+	 * @return number of files
+	 */
+	public int size() {
+		return files.size();
+	}
+
+	/**
+	 * Computes the SHA-256 hash of a file.
+	 *
+	 * @param file the file to read
+	 * @return the hash as lowercase hexadecimal
+	 * @throws IOException if unable to read the file
+	 */
+	static String hash(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = Files.newInputStream(file);) {
+			int read = in.read(buffer);
+			while (read >= 0) {
+				digest.update(buffer, 0, read);
+				read = in.read(buffer);
+			}
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * The recorded state of one file.
+	 */
+	private static class Entry {
+		private final long size;
+		private final long modified;
+		private final String hash;
+
+		public Entry(long size, long modified, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * The files found to differ from the manifest.
+	 */
+	public static class Changes {
+		/** Files that were not recorded. */
+		public final ArrayList<Path> added = new ArrayList<>();
+
+		/** Recorded files whose contents changed. */
+		public final ArrayList<Path> modified = new ArrayList<>();
+
+		/** Recorded locations that no longer exist. */
+		public final ArrayList<String> removed = new ArrayList<>();
+
+		/**
+		 * Tests whether nothing changed.
+		 *
+		 * @return true if no file was added, modified or removed
+		 */
+		public boolean isEmpty() {
+			return added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+		}
+
+		/**
+		 * Returns a summary of the changes
+		 */
+		@Override
+		public String toString() {
+			return String.format("added: %d, modified: %d, removed: %d", added.size(), modified.size(),
+					removed.size());
+		}
+	}
+}
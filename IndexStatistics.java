@@ -0,0 +1,104 @@
+import java.util.HashMap;
+
+/**
+ * Running word statistics for an inverted index. The number of locations and
+ * the number of occurrences of each word, along with the total number of words
+ * indexed, are updated as postings are added so every lookup is constant time.
+ */
+public class IndexStatistics {
+
+	/** Map of words to their {location count, occurrence count}. */
+	private final HashMap<String, int[]> terms;
+
+	/** The total number of word occurrences indexed. */
+	private long tokens;
+
+	/**
+	 * Initializes empty statistics
+	 */
+	public IndexStatistics() {
+		terms = new HashMap<>();
+		tokens = 0;
+	}
+
+	/**
+	 * Records new postings and occurrences of a word.
+	 *
+	 * @param word        the word that was added
+	 * @param locations   the number of locations the word is newly found in
+	 * @param occurrences the number of new positions the word is found at
+	 */
+	public void add(String word, int locations, int occurrences) {
+		int[] counts = terms.get(word);
+		if (counts == null) {
+			counts = new int[2];
+			terms.put(word, counts);
+		}
+		counts[0] += locations;
+		counts[1] += occurrences;
+		tokens += occurrences;
+	}
+
+	/**
+	 * Records postings and occurrences of a word that were removed. The word is
+	 * forgotten once it is no longer found in any location.
+	 *
+	 * @param word        the word that was removed from some locations
+	 * @param locations   the number of locations the word is no longer found in
+	 * @param occurrences the number of positions removed
+	 */
+	public void remove(String word, int locations, int occurrences) {
+		int[] counts = terms.get(word);
+		if (counts == null) {
+			return;
+		}
+		counts[0] -= locations;
+		counts[1] -= occurrences;
+		tokens -= occurrences;
+		if (counts[0] <= 0) {
+			terms.remove(word);
+		}
+	}
+
+	/**
+	 * Returns the number of locations a word is found in.
+	 *
+	 * @param word the word to look for
+	 *
+	 * @return the document frequency of the word, or 0 if it is not indexed
+	 */
+	public int documentFrequency(String word) {
+		int[] counts = terms.get(word);
+		return counts == null ? 0 : counts[0];
+	}
+
+	/**
+	 * Returns the number of times a word is found across all locations.
+	 *
+	 * @param word the word to look for
+	 *
+	 * @return the collection frequency of the word, or 0 if it is not indexed
+	 */
+	public int collectionFrequency(String word) {
+		int[] counts = terms.get(word);
+		return counts == null ? 0 : counts[1];
+	}
+
+	/**
+	 * Returns the number of distinct words recorded.
+	 *
+	 * @return the number of words
+	 */
+	public int termCount() {
+		return terms.size();
+	}
+
+	/**
+	 * Returns the total number of word occurrences recorded.
+	 *
+	 * @return the number of tokens
+	 */
+	public long tokenCount() {
+		return tokens;
+	}
+}
@@ -4,23 +4,41 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
-public class InvertedIndex {
+public class InvertedIndex implements WritableIndex {
 
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
-	private final TreeMap<String, Integer> locationMap;
+	/** The number of words purged per batch by {@link #compact()}. */
+	static final int PURGE_BATCH = 1024;
+
+	private final TreeMap<String, TreeMap<Integer, PositionList>> index;
+	private final DocumentTable documents;
+	private final IndexStatistics statistics;
 
 	/**
 	 * Initializes the index
 	 */
 	public InvertedIndex() {
+		this(new DocumentTable());
+	}
+
+	/**
+	 * Initializes the index with a document table that may be shared with other
+	 * indexes, such as the shards of a {@link ShardedInvertedIndex}.
+	 * 
+	 * @param documents the table used to assign and resolve location ids
+	 */
+	InvertedIndex(DocumentTable documents) {
 		index = new TreeMap<>();
-		locationMap = new TreeMap<>();
+		this.documents = documents;
+		statistics = new IndexStatistics();
 	}
 
 	/**
@@ -30,7 +48,7 @@ public class InvertedIndex {
 	 */
 	public void toJSON(Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
-			JSONWriter.asDoubleNested(index, writer, 0);
+			JSONWriter.asDoubleNested(index, documents, writer, 0);
 		}
 	}
 	
@@ -41,7 +59,7 @@ public class InvertedIndex {
 	 */
 	public void outPutLocationMap(Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
-			JSONWriter.asObject(locationMap, writer, 0);
+			JSONWriter.asObject(documents.toMap(), writer, 0);
 		}
 	}
 
@@ -54,45 +72,390 @@ public class InvertedIndex {
 	 * @param position    the position of the word when it was found in a file
 	 */
 	public void add(String stemmedWord, String inputFile, int position) {
+		int document = documents.add(inputFile);
+		if (addPosition(stemmedWord, document, position)) {
+			documents.addTerms(document, 1);
+		}
+		documents.setTotal(document, Math.max(documents.getTotal(document), position));
+	}
+
+	/**
+	 * adds every word of a location to the index at once, from a buffer of each
+	 * distinct word and its positions, with one lookup per word instead of one per
+	 * position. The position lists are moved into the index, so the buffer should
+	 * not be used afterwards.
+	 * 
+	 * @param location      the file path for where the words were found
+	 * @param termPositions map of stemmed words to their positions in the location
+	 * @param totalWords    the number of words in the location
+	 */
+	public void addDocument(String location, Map<String, PositionList> termPositions, int totalWords) {
+		if (termPositions.isEmpty()) {
+			return;
+		}
+		int document = documents.add(location);
+		documents.addTerms(document, addPostings(document, termPositions.entrySet()));
+		documents.setTotal(document, Math.max(documents.getTotal(document), totalWords));
+	}
+
+	/**
+	 * adds the positions of some words for a location id, without updating the
+	 * document table.
+	 * 
+	 * @param document the id of the location where the words were found
+	 * @param terms    the words and their positions in the location
+	 * @return the number of words not previously found in the location
+	 */
+	int addPostings(int document, Iterable<Map.Entry<String, PositionList>> terms) {
+		int newTerms = 0;
+		for (Map.Entry<String, PositionList> term : terms) {
+			TreeMap<Integer, PositionList> locations = index.computeIfAbsent(term.getKey(), word -> new TreeMap<>());
+			PositionList positions = locations.putIfAbsent(document, term.getValue());
+			if (positions == null) {
+				newTerms++;
+				statistics.add(term.getKey(), 1, term.getValue().size());
+			} else {
+				int before = positions.size();
+				positions.addAll(term.getValue());
+				statistics.add(term.getKey(), 0, positions.size() - before);
+			}
+		}
+		return newTerms;
+	}
+
+	/**
+	 * adds a position for a word and location id, without updating the document
+	 * table.
+	 * 
+	 * @param stemmedWord a stemmed and parsed word to be added to the index
+	 * @param document    the id of the location where the word was found
+	 * @param position    the position of the word when it was found in a file
+	 * @return true if the word was not previously found in the location
+	 */
+	boolean addPosition(String stemmedWord, int document, int position) {
 		index.putIfAbsent(stemmedWord, new TreeMap<>());
-		index.get(stemmedWord).putIfAbsent(inputFile, new TreeSet<>());
-		index.get(stemmedWord).get(inputFile).add(position);
-		int count = locationMap.getOrDefault(inputFile, 0);
-		locationMap.put(inputFile, Math.max(count, position));
+		boolean newLocation = false;
+		if (index.get(stemmedWord).putIfAbsent(document, new PositionList()) == null) {
+			newLocation = true;
+		}
+		if (index.get(stemmedWord).get(document).add(position)) {
+			statistics.add(stemmedWord, newLocation ? 1 : 0, 1);
+		}
+		return newLocation;
 	}
 	
 	/**
 	 * adds word, locations, and positions to inverted index inside a nested TreeMap
 	 * data Structure from a smaller, local index.
 	 * 
-	 * @param localIndex a TreeMap<String, TreeMap<String, TreeSet<Integer>>> 
+	 * @param localIndex an InvertedIndex of words, paths, and locations
 	 */
 	public void addAll(InvertedIndex localIndex) throws IOException {
+		int[] remap = addDocuments(localIndex);
+		int[] newTerms = new int[remap.length];
+		addWords(localIndex, localIndex.index.keySet(), remap, newTerms);
+		addTerms(remap, newTerms);
+	}
+
+	/**
+	 * adds the locations of a local index to the document table, summing the word
+	 * totals of locations that are already known. Locations removed from the local
+	 * index are skipped.
+	 * 
+	 * @param localIndex an InvertedIndex of words, paths, and locations
+	 * @return the id in this index of each location id in the local index, or -1
+	 *         for removed locations
+	 */
+	int[] addDocuments(InvertedIndex localIndex) {
+		int[] remap = new int[localIndex.documents.size()];
+		for (int local = 0; local < remap.length; local++) {
+			if (localIndex.documents.isRemoved(local)) {
+				remap[local] = -1;
+				continue;
+			}
+			int known = documents.size();
+			int document = documents.add(localIndex.documents.getPath(local));
+			int total = localIndex.documents.getTotal(local);
+			if (document < known) {
+				total += documents.getTotal(document);
+			}
+			documents.setTotal(document, total);
+			remap[local] = document;
+		}
+		return remap;
+	}
+
+	/**
+	 * records the number of words newly found in each location of a local index.
+	 * 
+	 * @param remap    the id in this index of each location id in the local index
+	 * @param newTerms the count of new words for each local location id
+	 */
+	void addTerms(int[] remap, int[] newTerms) {
+		for (int local = 0; local < remap.length; local++) {
+			if (remap[local] >= 0) {
+				documents.addTerms(remap[local], newTerms[local]);
+			}
+		}
+	}
+
+	/**
+	 * adds the postings of some words from a local index, without updating the
+	 * document table. The number of words newly found in each local location is
+	 * added to newTerms.
+	 * 
+	 * @param localIndex an InvertedIndex of words, paths, and locations
+	 * @param words      the words of the local index to add
+	 * @param remap      the id in this index of each location id in the local index
+	 * @param newTerms   the count of new words for each local location id
+	 */
+	void addWords(InvertedIndex localIndex, Collection<String> words, int[] remap, int[] newTerms) {
+		for (String word : words) {
+			index.putIfAbsent(word, new TreeMap<>());
+			TreeMap<Integer, PositionList> locations = index.get(word);
+			int newLocations = 0;
+			int newOccurrences = 0;
+			for (var entry : localIndex.index.get(word).entrySet()) {
+				int document = remap[entry.getKey()];
+				if (document < 0) {
+					continue;
+				}
+				if (!locations.containsKey(document)) {
+					locations.put(document, entry.getValue());
+					newTerms[entry.getKey()]++;
+					newLocations++;
+					newOccurrences += entry.getValue().size();
+				} else {
+					PositionList positions = locations.get(document);
+					int before = positions.size();
+					positions.addAll(entry.getValue());
+					newOccurrences += positions.size() - before;
+				}
+			}
+			statistics.add(word, newLocations, newOccurrences);
+			if (locations.isEmpty()) {
+				index.remove(word);
+			}
+		}
+	}
+
+	/**
+	 * merges another index into this one by walking the sorted words of both
+	 * indexes side by side, instead of looking up every word of the other index.
+	 * The other index should not be used afterwards, since its position lists are
+	 * moved into this index.
+	 * 
+	 * @param other an InvertedIndex of words, paths, and locations
+	 */
+	public void merge(InvertedIndex other) {
+		int[] remap = addDocuments(other);
+		int[] newTerms = new int[remap.length];
+		mergeWords(other.index.entrySet().iterator(), remap, newTerms);
+		addTerms(remap, newTerms);
+	}
+
+	/**
+	 * merges a sorted run of words and postings from another index into this one,
+	 * without updating the document table. The number of words newly found in each
+	 * of the other index's locations is added to newTerms.
+	 * 
+	 * @param run      the words and postings to merge, in increasing word order
+	 * @param remap    the id in this index of each location id in the other index
+	 * @param newTerms the count of new words for each location id of the other
+	 *                 index
+	 */
+	void mergeWords(Iterator<Map.Entry<String, TreeMap<Integer, PositionList>>> run, int[] remap,
+			int[] newTerms) {
+		TreeMap<String, TreeMap<Integer, PositionList>> merged = new TreeMap<>();
+		Iterator<Map.Entry<String, TreeMap<Integer, PositionList>>> mine = index.entrySet().iterator();
+		Map.Entry<String, TreeMap<Integer, PositionList>> current = mine.hasNext() ? mine.next() : null;
+		Map.Entry<String, TreeMap<Integer, PositionList>> other = run.hasNext() ? run.next() : null;
+
+		while (current != null || other != null) {
+			int compare = current == null ? 1 : other == null ? -1 : current.getKey().compareTo(other.getKey());
+			if (compare < 0) {
+				merged.put(current.getKey(), current.getValue());
+				current = mine.hasNext() ? mine.next() : null;
+				continue;
+			}
+
+			TreeMap<Integer, PositionList> locations = compare == 0 ? current.getValue() : new TreeMap<>();
+			int newLocations = 0;
+			int newOccurrences = 0;
+			for (var entry : other.getValue().entrySet()) {
+				if (remap[entry.getKey()] < 0) {
+					continue;
+				}
+				PositionList positions = locations.putIfAbsent(remap[entry.getKey()], entry.getValue());
+				if (positions == null) {
+					newTerms[entry.getKey()]++;
+					newLocations++;
+					newOccurrences += entry.getValue().size();
+				} else {
+					int before = positions.size();
+					positions.addAll(entry.getValue());
+					newOccurrences += positions.size() - before;
+				}
+			}
+			statistics.add(other.getKey(), newLocations, newOccurrences);
+			if (!locations.isEmpty()) {
+				merged.put(other.getKey(), locations);
+			}
+
+			if (compare == 0) {
+				current = mine.hasNext() ? mine.next() : null;
+			}
+			other = run.hasNext() ? run.next() : null;
+		}
+
+		index.clear();
+		index.putAll(merged);
+	}
+
+	/**
+	 * adds the postings of a word that is not yet in the index, without updating
+	 * the document table.
+	 * 
+	 * @param word        the word to add
+	 * @param locations   map of location ids to positions of the word
+	 * @param occurrences the number of positions across all locations
+	 */
+	void putPostings(String word, TreeMap<Integer, PositionList> locations, int occurrences) {
+		index.put(word, locations);
+		statistics.add(word, locations.size(), occurrences);
+	}
+
+	/**
+	 * removes a location from the index. The location is marked with a tombstone
+	 * and skipped by searches right away; its postings stay in the index until
+	 * {@link #compact()} purges them.
+	 * 
+	 * @param location the location path to remove
+	 * @return true if the location was in the index
+	 */
+	public boolean remove(String location) {
+		return removeAll(List.of(location)) > 0;
+	}
+
+	/**
+	 * removes locations from the index by marking them with tombstones.
+	 * 
+	 * @param locations the location paths to remove
+	 * @return the number of locations that were in the index
+	 * 
+	 * @see #remove(String)
+	 */
+	public int removeAll(Collection<String> locations) {
+		int count = 0;
+		for (String location : locations) {
+			if (documents.remove(location) >= 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * replaces a location with the contents of a local index, which should hold the
+	 * new postings of the location. The old postings are marked with a tombstone and
+	 * the location is given a new id.
+	 * 
+	 * @param location   the location path to replace
+	 * @param localIndex an InvertedIndex of the new words and positions of the
+	 *                   location
+	 */
+	public void replace(String location, InvertedIndex localIndex) throws IOException {
+		remove(location);
+		addAll(localIndex);
+	}
+
+	/**
+	 * purges the postings of every removed location from the index.
+	 */
+	public void compact() {
+		BitSet removed = documents.pending();
+		if (removed.isEmpty()) {
+			return;
+		}
+		String next = purgeWords(removed, "", Integer.MAX_VALUE);
+		assert next == null;
+		documents.purged(removed);
+	}
+
+	/**
+	 * purges the postings of some location ids from a batch of words, without
+	 * updating the document table. Words left without postings are removed.
+	 * 
+	 * @param removed the location ids to purge
+	 * @param from    the first word of the batch
+	 * @param limit   the maximum number of words in the batch
+	 * @return the first word of the next batch, or null if every word was purged
+	 */
+	String purgeWords(BitSet removed, String from, int limit) {
+		int cardinality = removed.cardinality();
+		Iterator<Map.Entry<String, TreeMap<Integer, PositionList>>> words = index.tailMap(from, true).entrySet()
+				.iterator();
+		while (words.hasNext()) {
+			Map.Entry<String, TreeMap<Integer, PositionList>> word = words.next();
+			if (limit-- == 0) {
+				return word.getKey();
+			}
 
-		for (String word : localIndex.index.keySet()) {
-			if (!index.containsKey(word)) {
-				index.put(word, localIndex.index.get(word));
+			TreeMap<Integer, PositionList> locations = word.getValue();
+			int removedLocations = 0;
+			int removedOccurrences = 0;
+			if (cardinality < locations.size()) {
+				for (int document = removed.nextSetBit(0); document >= 0; document = removed.nextSetBit(document + 1)) {
+					PositionList positions = locations.remove(document);
+					if (positions != null) {
+						removedLocations++;
+						removedOccurrences += positions.size();
+					}
+				}
 			} else {
-				for (String location : localIndex.index.get(word).keySet()) {
-					if (!index.get(word).containsKey(location)) {
-						index.get(word).put(location, localIndex.index.get(word).get(location));
-					} else {
-						index.get(word).get(location).addAll(localIndex.index.get(word).get(location));
+				Iterator<Map.Entry<Integer, PositionList>> postings = locations.entrySet().iterator();
+				while (postings.hasNext()) {
+					Map.Entry<Integer, PositionList> posting = postings.next();
+					if (removed.get(posting.getKey())) {
+						removedLocations++;
+						removedOccurrences += posting.getValue().size();
+						postings.remove();
 					}
 				}
 			}
+
+			if (removedLocations > 0) {
+				statistics.remove(word.getKey(), removedLocations, removedOccurrences);
+				if (locations.isEmpty()) {
+					words.remove();
+				}
+			}
 		}
+		return null;
+	}
 
-		for (String location : localIndex.locationMap.keySet()) {
-			if (!locationMap.containsKey(location)) {
-				locationMap.put(location, localIndex.locationMap.get(location));
-			} else {
-				int count = locationMap.get(location) + localIndex.locationMap.get(location);
-				locationMap.put(location, count);
+	/**
+	 * Compresses the position lists of every word and location in the index. Should
+	 * be called once the locations in the index are finished being parsed.
+	 */
+	public void compress() {
+		for (TreeMap<Integer, PositionList> locations : index.values()) {
+			for (PositionList positions : locations.values()) {
+				positions.compress();
 			}
 		}
 	}
 
+	/**
+	 * Builds an immutable, array-backed snapshot of the index that can be searched
+	 * by any number of threads without locking.
+	 * 
+	 * @return a frozen copy of the index
+	 */
+	public FrozenInvertedIndex freeze() {
+		return new FrozenInvertedIndex(index, documents);
+	}
+
 	/**
 	 * Tests whether the index contains the specified word.
 	 *
@@ -104,9 +467,46 @@ public class InvertedIndex {
 		if (index == null) {
 			return false;
 		}
+		if (documents.hasPending()) {
+			return index.containsKey(word) && liveLocations(index.get(word)) > 0;
+		}
 		return (index.containsKey(word));
 	}
 
+	/**
+	 * Returns the number of postings of a word whose location has not been
+	 * removed.
+	 * 
+	 * @param locations map of location ids to positions of a word
+	 * @return the number of live postings
+	 */
+	private int liveLocations(TreeMap<Integer, PositionList> locations) {
+		int count = 0;
+		for (Integer document : locations.keySet()) {
+			if (!documents.isRemoved(document)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of positions of a word in locations that have not been
+	 * removed.
+	 * 
+	 * @param locations map of location ids to positions of a word
+	 * @return the number of live positions
+	 */
+	private int liveOccurrences(TreeMap<Integer, PositionList> locations) {
+		int count = 0;
+		for (var entry : locations.entrySet()) {
+			if (!documents.isRemoved(entry.getKey())) {
+				count += entry.getValue().size();
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * updates search results if a new match is found, creates new search results
 	 * for new search matches.
@@ -115,17 +515,20 @@ public class InvertedIndex {
 	 * @param lookup        a map of previous searches to their words
 	 * @param searchResults a map of searchResults
 	 */
-	private void searchHelper(String queryWord, HashMap<String, SearchResult> lookup,
+	private void searchHelper(String queryWord, HashMap<Integer, SearchResult> lookup,
 			ArrayList<SearchResult> searchResults) {
 
-		for (String path : index.get(queryWord).keySet()) {
-			if (lookup.containsKey(path.toString())) {
-				SearchResult result = lookup.get(path);
-				result.addCount(index.get(queryWord).get(path).size());
+		for (var entry : index.get(queryWord).entrySet()) {
+			Integer document = entry.getKey();
+			if (documents.isRemoved(document)) {
+				continue;
+			}
+			SearchResult result = lookup.get(document);
+			if (result != null) {
+				result.addCount(entry.getValue().size());
 			} else {
-				Integer newCount = index.get(queryWord).get(path).size();
-				SearchResult newMem = new SearchResult(path, newCount, locationMap.get(path));
-				lookup.put(path, newMem);
+				SearchResult newMem = new SearchResult(document, entry.getValue().size(), documents);
+				lookup.put(document, newMem);
 				searchResults.add(newMem);
 			}
 		}
@@ -142,17 +545,30 @@ public class InvertedIndex {
 
 	public ArrayList<SearchResult> exactSearch(Collection<String> query) {
 		ArrayList<SearchResult> searchResults = new ArrayList<>();
-		HashMap<String, SearchResult> lookup = new HashMap<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
 
 		for (String queryWord : query) {
-			if (index.containsKey(queryWord)) {
-				searchHelper(queryWord, lookup, searchResults);
-			}
+			exactSearch(queryWord, lookup, searchResults);
 		}
 		Collections.sort(searchResults);
 		return searchResults;
 	}
 
+	/**
+	 * adds the locations of a word that exactly matches the query word to the
+	 * search results.
+	 * 
+	 * @param queryWord     a word to search for
+	 * @param lookup        a map of location ids to their search results
+	 * @param searchResults the list of search results
+	 */
+	void exactSearch(String queryWord, HashMap<Integer, SearchResult> lookup,
+			ArrayList<SearchResult> searchResults) {
+		if (index.containsKey(queryWord)) {
+			searchHelper(queryWord, lookup, searchResults);
+		}
+	}
+
 	/**
 	 * Searches through the InvertedIndex for partial matches to the Query of words
 	 * passed in and generates a list of matches.
@@ -163,21 +579,34 @@ public class InvertedIndex {
 	 */
 	public ArrayList<SearchResult> partialSearch(Collection<String> query) {
 		ArrayList<SearchResult> searchResults = new ArrayList<>();
-		HashMap<String, SearchResult> lookup = new HashMap<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
 		for (String queryWord : query) {
-			for (String indexWord : index.tailMap(queryWord).keySet()) {
-				if (indexWord.startsWith(queryWord)) {
-					searchHelper(indexWord, lookup, searchResults);
-				} else {
-					break;
-				}
-			}
+			partialSearch(queryWord, lookup, searchResults);
 		}
 
 		Collections.sort(searchResults);
 		return searchResults;
 	}
 
+	/**
+	 * adds the locations of every word that starts with the query word to the
+	 * search results.
+	 * 
+	 * @param queryWord     a word to search for
+	 * @param lookup        a map of location ids to their search results
+	 * @param searchResults the list of search results
+	 */
+	void partialSearch(String queryWord, HashMap<Integer, SearchResult> lookup,
+			ArrayList<SearchResult> searchResults) {
+		for (String indexWord : index.tailMap(queryWord).keySet()) {
+			if (indexWord.startsWith(queryWord)) {
+				searchHelper(indexWord, lookup, searchResults);
+			} else {
+				break;
+			}
+		}
+	}
+
 	/**
 	 * Tests whether the index contains a specific word and if that word contains a
 	 * specific path
@@ -189,7 +618,7 @@ public class InvertedIndex {
 	 */
 	public boolean contains(String word, String path) {
 		if (index.containsKey(word)) {
-			if (index.get(word).containsKey(path)) {
+			if (index.get(word).containsKey(documents.getId(path))) {
 				return true;
 			}
 		}
@@ -206,9 +635,10 @@ public class InvertedIndex {
 	 * @return true if the position is stored in the path for a word in the index
 	 */
 	public boolean contains(String word, String path, int position) {
+		int document = documents.getId(path);
 		if (index.containsKey(word)) {
-			if (index.get(word).containsKey(path)) {
-				if (index.get(word).get(path).contains(position)) {
+			if (index.get(word).containsKey(document)) {
+				if (index.get(word).get(document).contains(position)) {
 					return true;
 				}
 			}
@@ -224,16 +654,8 @@ public class InvertedIndex {
 	 * @return true if the path is stored in the index
 	 */
 	public boolean contains(Path path) {
-		if (index == null) {
-			return false;
-		}
-		String stringPath = path.toString();
-		for (String key : index.keySet()) {
-			if (index.get(key).keySet().contains(stringPath)) {
-				return true;
-			}
-		}
-		return false;
+		int document = documents.getId(path.toString());
+		return document >= 0 && documents.getTerms(document) > 0;
 	}
 
 	/**
@@ -242,6 +664,15 @@ public class InvertedIndex {
 	 * @return int number of words in the index
 	 */
 	public int wordCount() {
+		if (documents.hasPending()) {
+			int count = 0;
+			for (TreeMap<Integer, PositionList> locations : index.values()) {
+				if (liveLocations(locations) > 0) {
+					count++;
+				}
+			}
+			return count;
+		}
 		return index.size();
 	}
 
@@ -253,11 +684,10 @@ public class InvertedIndex {
 	 * @return int number of words in the index
 	 */
 	public int pathCount(String word) {
-		if (contains(word)) {
-			return (index.get(word).size());
-		} else {
-			return 0;
+		if (documents.hasPending()) {
+			return index.containsKey(word) ? liveLocations(index.get(word)) : 0;
 		}
+		return statistics.documentFrequency(word);
 	}
 
 	/**
@@ -271,7 +701,7 @@ public class InvertedIndex {
 	 */
 	public int positionCount(String word, String path) {
 		if (contains(word, path)) {
-			return (index.get(word).get(path).size());
+			return (index.get(word).get(documents.getId(path)).size());
 		}
 
 		return 0;
@@ -283,14 +713,50 @@ public class InvertedIndex {
 	 *
 	 * @param word word to look for
 	 * 
-	 * @return number of times the word was found
+	 * @return number of times the word was found, or 0 if the word is not stored
 	 */
 	public int wordCount(String word) {
-		int count = 0;
-		for (String path : index.get(word).keySet()) {
-			count = count + index.get(word).get(path).size();
+		if (documents.hasPending()) {
+			return index.containsKey(word) ? liveOccurrences(index.get(word)) : 0;
 		}
-		return count;
+		return statistics.collectionFrequency(word);
+	}
+
+	/**
+	 * Returns the total number of word occurrences in the inverted index.
+	 * 
+	 * @return number of positions stored across all words and locations
+	 */
+	public long tokenCount() {
+		if (documents.hasPending()) {
+			long count = 0;
+			for (TreeMap<Integer, PositionList> locations : index.values()) {
+				count += liveOccurrences(locations);
+			}
+			return count;
+		}
+		return statistics.tokenCount();
+	}
+
+	/**
+	 * Returns the number of words found in a location.
+	 * 
+	 * @param path path to look for
+	 * 
+	 * @return number of words in the location, or 0 if the location is not stored
+	 */
+	public int tokenCount(Path path) {
+		int document = documents.getId(path.toString());
+		return document >= 0 ? documents.getTotal(document) : 0;
+	}
+
+	/**
+	 * Returns the number of locations in the inverted index.
+	 * 
+	 * @return number of locations
+	 */
+	public int locationCount() {
+		return documents.count();
 	}
 
 	/**
@@ -303,14 +769,37 @@ public class InvertedIndex {
 	 */
 
 	public int pathCount(Path path) {
-		String stringPath = path.toString();
-		int count = 0;
-		for (String key : index.keySet()) {
-			if (index.get(key).containsKey(stringPath)) {
-				count++;
-			}
-		}
-		return count;
+		int document = documents.getId(path.toString());
+		return document >= 0 ? documents.getTerms(document) : 0;
+	}
+
+	/**
+	 * Returns the nested map of words to location ids to positions backing the
+	 * index.
+	 * 
+	 * @return the word map of the index
+	 */
+	TreeMap<String, TreeMap<Integer, PositionList>> words() {
+		return index;
+	}
+
+	/**
+	 * Returns the document table used to assign and resolve location ids.
+	 * 
+	 * @return the document table of the index
+	 */
+	DocumentTable documents() {
+		return documents;
+	}
+
+	/**
+	 * Returns the running statistics of the words added to the index, which still
+	 * count removed locations until they are purged.
+	 * 
+	 * @return the statistics of the index
+	 */
+	IndexStatistics statistics() {
+		return statistics;
 	}
 
 	/**
@@ -318,6 +807,18 @@ public class InvertedIndex {
 	 */
 	@Override
 	public String toString() {
-		return index.toString();
+		TreeMap<String, TreeMap<String, PositionList>> resolved = new TreeMap<>();
+		for (String word : index.keySet()) {
+			TreeMap<String, PositionList> locations = new TreeMap<>();
+			for (var entry : index.get(word).entrySet()) {
+				if (!documents.isRemoved(entry.getKey())) {
+					locations.put(documents.getPath(entry.getKey()), entry.getValue());
+				}
+			}
+			if (!locations.isEmpty()) {
+				resolved.put(word, locations);
+			}
+		}
+		return resolved.toString();
 	}
 }
@@ -1,10 +1,14 @@
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class InvertedIndexBuilder {
 	/**
@@ -21,52 +25,166 @@ public class InvertedIndexBuilder {
 	 *                      paths, integers that lives in main
 	 */
 	public static void traverse(Path directory, InvertedIndex index) throws IOException {
+		traverse(directory, index, false);
+	}
+
+	/**
+	 * Traverses a directory as {@link #traverse(Path, InvertedIndex)} does,
+	 * optionally parsing each text file by mapping it into memory rather than
+	 * reading it line by line.
+	 * 
+	 * @throws IOException if unable to read or write to file
+	 * 
+	 * @param directory a path object. Can be a directory or path to a specific
+	 *                  file
+	 * @param index     the index to add every text file to
+	 * @param mapped    whether to parse files with {@link MappedFileStemmer}
+	 */
+	public static void traverse(Path directory, InvertedIndex index, boolean mapped) throws IOException {
+		if (Files.isDirectory(directory)) {
+			try (var listing = Files.newDirectoryStream(directory)) {
+				for (Path path : listing) {
+					traverse(path, index, mapped);
+				}
+			}
+		} else if (Files.exists(directory)) {
+			String stringLower = directory.toString().toLowerCase();
+			if ((stringLower.endsWith(".txt") == true) || (stringLower.endsWith(".text") == true)) {
+				if (mapped) {
+					MappedFileStemmer.stemFile(directory, index);
+				} else {
+					stemFile(directory, index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses every text file under a directory into its own local index, and adds
+	 * the local indexes to a builder that spills them to disk once they exceed its
+	 * memory budget.
+	 * 
+	 * @throws IOException if unable to read a file or write a run
+	 * 
+	 * @param directory a path object. Can be a directory or path to a specific
+	 *                  file
+	 * @param spill     the builder to add the local indexes to
+	 */
+	public static void traverse(Path directory, SpillingIndexBuilder spill) throws IOException {
+		ArrayList<Path> files = new ArrayList<>();
+		listFiles(directory, files);
+		for (Path file : files) {
+			InvertedIndex localIndex = new InvertedIndex();
+			stemFile(file, localIndex);
+			localIndex.compress();
+			spill.add(localIndex);
+		}
+	}
+
+	/**
+	 * Collects every text file under a directory, in the same order
+	 * {@link #traverse(Path, InvertedIndex)} would parse them.
+	 * 
+	 * @throws IOException if unable to read a directory
+	 * 
+	 * @param directory a path object. Can be a directory or path to a specific
+	 *                  file
+	 * @param files     the list to add the text files to
+	 */
+	public static void listFiles(Path directory, List<Path> files) throws IOException {
 		if (Files.isDirectory(directory)) {
 			try (var listing = Files.newDirectoryStream(directory)) {
 				for (Path path : listing) {
-					traverse(path, index);
+					listFiles(path, files);
 				}
 			}
 		} else if (Files.exists(directory)) {
 			String stringLower = directory.toString().toLowerCase();
 			if ((stringLower.endsWith(".txt") == true) || (stringLower.endsWith(".text") == true)) {
-				stemFile(directory, index);
+				files.add(directory);
 			}
 		}
 	}
 
 	/**
 	 * Parses a text file into stemmed words, and adds those words to an inverted
-	 * index. creates a new snowballerstemmer object and reader. calls line stemmer
-	 * to stem all words in a line and then adds those words to a stemmedWords
-	 * Array. Calls add function to put new values in the InvertedIndex
+	 * index. creates a reader and stems all words in a line through the shared
+	 * stem cache. The positions of each word are buffered, and the whole file is
+	 * added to the InvertedIndex at once.
 	 *
 	 * @param inputFile     the input file to parse
 	 * @param InvertedINdex index InvertedIndex data structure.
 	 * @throws IOException if unable to read or write to file
 	 *
-	 * @see #stemLine(String)
+	 * @see StemCache#stem(String)
 	 * @see TextParser#parse(String)
+	 * @see InvertedIndex#addDocument(String, Map, int)
 	 */
 	public static void stemFile(Path inputFile, InvertedIndex index) throws IOException {
+		HashMap<String, PositionList> terms = new HashMap<>();
+		int total = stemTerms(inputFile, terms);
+		index.addDocument(inputFile.toString(), terms, total);
+	}
+
+	/**
+	 * Parses a text file into stemmed words, and adds the positions of each word
+	 * to a buffer.
+	 *
+	 * @param inputFile the input file to parse
+	 * @param terms     map of stemmed words to their positions in the file
+	 * @return the number of words in the file
+	 * @throws IOException if unable to read the file
+	 */
+	static int stemTerms(Path inputFile, Map<String, PositionList> terms) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8);) {
-			String line = null;
+			return stemLines(reader, terms);
+		}
+	}
 
-			line = reader.readLine();
+	/**
+	 * Parses the contents of a text file that were already read into memory into
+	 * stemmed words, and adds the positions of each word to a buffer.
+	 *
+	 * @param bytes the UTF-8 contents of the file
+	 * @param terms map of stemmed words to their positions in the file
+	 * @return the number of words in the file
+	 * @throws IOException if the contents are not valid UTF-8
+	 */
+	static int stemBytes(byte[] bytes, Map<String, PositionList> terms) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8.newDecoder()));) {
+			return stemLines(reader, terms);
+		}
+	}
 
-			Stemmer wordStemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-			Integer count = 1;
+	/**
+	 * Parses every line of a reader into stemmed words, and adds the positions of
+	 * each word to a buffer, counting from 1.
+	 *
+	 * @param reader the reader to parse lines from
+	 * @param terms  map of stemmed words to their positions
+	 * @return the number of words parsed
+	 * @throws IOException if unable to read
+	 *
+	 * @see #stemFile(Path, InvertedIndex)
+	 */
+	static int stemLines(BufferedReader reader, Map<String, PositionList> terms) throws IOException {
+		String line = null;
 
-			String location = inputFile.toString();
-			while (line != null) {
-				String[] parsed = ParserOfText.parse(line);
-				for (String word : parsed) {
-					String stemmedWord = wordStemmer.stem(word).toString();
-					index.add(stemmedWord, location, count);
-					count++;
-				}
-				line = reader.readLine();
+		line = reader.readLine();
+
+		StemCache stems = StemCache.shared();
+		int count = 0;
+
+		while (line != null) {
+			String[] parsed = ParserOfText.parse(line);
+			for (String word : parsed) {
+				String stemmedWord = stems.stem(word);
+				count++;
+				terms.computeIfAbsent(stemmedWord, stem -> new PositionList()).add(count);
 			}
+			line = reader.readLine();
 		}
+		return count;
 	}
 }
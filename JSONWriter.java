@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.PrimitiveIterator;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -117,41 +118,59 @@ public class JSONWriter {
 	 * 
 	 * @throws IOException if unable to read or write to file
 	 * 
-	 * @param elements the Inverted index with type TreeMap<String, WordIndex> that
-	 *                 is to be written out
-	 * @param writer   a writer object that contains the outfile path to write to
-	 * @param level    the base level of indentation for the outfile
+	 * @param elements  the Inverted index with type TreeMap<String, WordIndex>
+	 *                  that is to be written out
+	 * @param documents the table used to resolve location ids into paths
+	 * @param writer    a writer object that contains the outfile path to write to
+	 * @param level     the base level of indentation for the outfile
 	 * 
 	 */
-	public static void asDoubleNested(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, Writer writer,
-			int level) throws IOException {
+	public static void asDoubleNested(TreeMap<String, TreeMap<Integer, PositionList>> elements,
+			DocumentTable documents, Writer writer, int level) throws IOException {
 		writer.write("{");
 		if (elements != null) {
-			if (elements.size() != 0) {
-				String lastKey = elements.lastKey();
-				for (String key : elements.headMap(lastKey, false).keySet()) {
-					writer.write(System.lineSeparator());
-					indent(level + 1, writer);
-					writer.write("\"");
-					writer.write(key.toString());
-					writer.write("\"");
-					writer.write(": {");
-					nestedObject(elements.get(key), writer, 1);
+			boolean first = true;
+			for (var entry : elements.entrySet()) {
+				TreeMap<String, PositionList> resolved = resolve(entry.getValue(), documents);
+				if (resolved.isEmpty()) {
+					continue;
+				}
+				if (!first) {
 					writer.write(",");
 				}
+				first = false;
 				writer.write(System.lineSeparator());
 				indent(level + 1, writer);
 				writer.write("\"");
-				writer.write(elements.lastKey().toString());
+				writer.write(entry.getKey());
 				writer.write("\"");
 				writer.write(": {");
-				nestedObject(elements.get(lastKey), writer, 1);
+				nestedObject(resolved, writer, 1);
 			}
 		}
 		writer.write(System.lineSeparator());
 		writer.write("}");
 	}
 
+	/**
+	 * Resolves the location ids of a word into their paths, sorted by path.
+	 * Removed locations are left out.
+	 * 
+	 * @param elements  a map of location ids to positions
+	 * @param documents the table used to resolve location ids into paths
+	 * @return a sorted map of location paths to positions
+	 */
+	private static TreeMap<String, PositionList> resolve(TreeMap<Integer, PositionList> elements,
+			DocumentTable documents) {
+		TreeMap<String, PositionList> resolved = new TreeMap<>();
+		for (var entry : elements.entrySet()) {
+			if (!documents.isRemoved(entry.getKey())) {
+				resolved.put(documents.getPath(entry.getKey()), entry.getValue());
+			}
+		}
+		return resolved;
+	}
+
 	/**
 	 * This method accesses the path values of each word in inverted index. It
 	 * writes out the path name and then calls as array to complete the JSON output
@@ -162,7 +181,7 @@ public class JSONWriter {
 	 * @param writer   a writer object that contains the outfile path to write to
 	 * @param level    the base level of indentation for the outfile
 	 */
-	public static void nestedObject(TreeMap<String, TreeSet<Integer>> elements, Writer writer, int level)
+	public static void nestedObject(TreeMap<String, PositionList> elements, Writer writer, int level)
 			throws IOException {
 		writer.write(System.lineSeparator());
 		if (elements != null) {
@@ -222,6 +241,34 @@ public class JSONWriter {
 		writer.write("]");
 	}
 
+	/**
+	 * This method writes out all of the positions inside a PositionList to JSON
+	 * format. Compressed lists are decoded as they are written.
+	 * 
+	 * @param elements the PositionList which houses each path's positions
+	 * @param writer   a writer object that contains the outfile path to write to
+	 * @param level    the base level of indentation for the outfile
+	 */
+	public static void asArray(PositionList elements, Writer writer, int level) throws IOException {
+		writer.write("[");
+		writer.write(System.lineSeparator());
+
+		if (elements != null) {
+			PrimitiveIterator.OfInt iterator = elements.iterator();
+			while (iterator.hasNext()) {
+				indent(level + 2, writer);
+				writer.write(Integer.toString(iterator.nextInt()));
+				if (iterator.hasNext()) {
+					writer.write(',');
+					writer.write(System.lineSeparator());
+				}
+			}
+		}
+		writer.write(System.lineSeparator());
+		indent(level, writer);
+		writer.write("]");
+	}
+
 	/**
 	 * this method indents the line on the JSON outputter file by one indent and
 	 * provides ability to increase by more than one indent
@@ -237,14 +284,14 @@ public class JSONWriter {
 
 	/**
 	 * this method is a default implementation for the asNestedObject method which
-	 * can be used on any object of type TreeMap<String, TreeSet<Integer>> to output
+	 * can be used on any object of type TreeMap<String, PositionList> to output
 	 * to Json Format.
 	 * 
 	 * @param elements a TreeMap data structure to hold locations along with word
 	 *                 locations
 	 * @param path     the path to the output file location
 	 */
-	public static void asNestedObject(TreeMap<String, TreeSet<Integer>> elements, Path path) throws IOException {
+	public static void asNestedObject(TreeMap<String, PositionList> elements, Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
 			nestedObject(elements, writer, 0);
 		}
@@ -0,0 +1,125 @@
+import java.util.Collection;
+
+/**
+ * The contention counters of one or more {@link OptimisticReadWriteLock}s: how
+ * often and how long readers and writers waited, and how many optimistic reads
+ * failed validation.
+ */
+public final class LockContention {
+
+	/** The number of times a reader had to wait for the lock. */
+	private final long readWaits;
+
+	/** The total time readers spent waiting, in nanoseconds. */
+	private final long readWaitNanos;
+
+	/** The number of times a writer had to wait for the lock. */
+	private final long writeWaits;
+
+	/** The total time writers spent waiting, in nanoseconds. */
+	private final long writeWaitNanos;
+
+	/** The number of optimistic reads that failed validation. */
+	private final long optimisticFailures;
+
+	/**
+	 * Initializes the counters.
+	 *
+	 * @param readWaits          number of contended read acquisitions
+	 * @param readWaitNanos      time readers spent waiting in nanoseconds
+	 * @param writeWaits         number of contended write acquisitions
+	 * @param writeWaitNanos     time writers spent waiting in nanoseconds
+	 * @param optimisticFailures number of failed optimistic reads
+	 */
+	public LockContention(long readWaits, long readWaitNanos, long writeWaits, long writeWaitNanos,
+			long optimisticFailures) {
+		this.readWaits = readWaits;
+		this.readWaitNanos = readWaitNanos;
+		this.writeWaits = writeWaits;
+		this.writeWaitNanos = writeWaitNanos;
+		this.optimisticFailures = optimisticFailures;
+	}
+
+	/**
+	 * Sums the counters of several locks, such as the locks of a sharded index.
+	 * Locks other than optimistic locks keep no counters and are skipped.
+	 *
+	 * @param locks the locks to sum the counters of
+	 * @return the summed counters
+	 */
+	public static LockContention summarize(Collection<? extends ReadWriteLock> locks) {
+		LockContention total = new LockContention(0, 0, 0, 0, 0);
+		for (ReadWriteLock lock : locks) {
+			if (lock instanceof OptimisticReadWriteLock) {
+				total = total.plus(((OptimisticReadWriteLock) lock).contention());
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the sum of these counters and another set of counters.
+	 *
+	 * @param other the counters to add
+	 * @return the summed counters
+	 */
+	public LockContention plus(LockContention other) {
+		return new LockContention(readWaits + other.readWaits, readWaitNanos + other.readWaitNanos,
+				writeWaits + other.writeWaits, writeWaitNanos + other.writeWaitNanos,
+				optimisticFailures + other.optimisticFailures);
+	}
+
+	/**
+	 * Returns the number of times a reader had to wait for the lock.
+	 *
+	 * @return number of contended read acquisitions
+	 */
+	public long getReadWaits() {
+		return readWaits;
+	}
+
+	/**
+	 * Returns the total time readers spent waiting for the lock.
+	 *
+	 * @return wait time in nanoseconds
+	 */
+	public long getReadWaitNanos() {
+		return readWaitNanos;
+	}
+
+	/**
+	 * Returns the number of times a writer had to wait for the lock.
+	 *
+	 * @return number of contended write acquisitions
+	 */
+	public long getWriteWaits() {
+		return writeWaits;
+	}
+
+	/**
+	 * Returns the total time writers spent waiting for the lock.
+	 *
+	 * @return wait time in nanoseconds
+	 */
+	public long getWriteWaitNanos() {
+		return writeWaitNanos;
+	}
+
+	/**
+	 * Returns the number of optimistic reads that failed validation.
+	 *
+	 * @return number of failed optimistic reads
+	 */
+	public long getOptimisticFailures() {
+		return optimisticFailures;
+	}
+
+	/**
+	 * Returns a summary of the contention counters
+	 */
+	@Override
+	public String toString() {
+		return String.format("read waits: %d (%.3f ms), write waits: %d (%.3f ms), optimistic failures: %d",
+				readWaits, readWaitNanos / 1e6, writeWaits, writeWaitNanos / 1e6, optimisticFailures);
+	}
+}
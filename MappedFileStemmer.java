@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * Parses a text file by mapping it into memory and scanning its bytes, instead
+ * of decoding every line into a string first. ASCII bytes are passed straight to
+ * the scanner of {@link ParserOfText}, and only runs of non-ASCII bytes are
+ * decoded. Since every byte of a non-ASCII UTF-8 character is at least 0x80,
+ * each run of such bytes decodes to exactly one run of non-ASCII characters, so
+ * the words and positions are the same as those of
+ * {@link InvertedIndexBuilder#stemFile(Path, InvertedIndex)}.
+ *
+ * Files too large to map at once are read through the reader instead.
+ */
+public class MappedFileStemmer {
+
+	/** The UTF-8 bytes of a capital sigma. */
+	private static final byte SIGMA_FIRST = (byte) 0xCE;
+	private static final byte SIGMA_SECOND = (byte) 0xA3;
+
+	/**
+	 * Parses a text file into stemmed words, and adds those words to an inverted
+	 * index at positions counted from 1.
+	 *
+	 * @param inputFile the input file to parse
+	 * @param index     the index to add the words to
+	 * @throws IOException if unable to read the file, or it is not valid UTF-8
+	 *
+	 * @see InvertedIndexBuilder#stemFile(Path, InvertedIndex)
+	 */
+	public static void stemFile(Path inputFile, InvertedIndex index) throws IOException {
+		MappedByteBuffer bytes;
+		try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ);) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				InvertedIndexBuilder.stemFile(inputFile, index);
+				return;
+			}
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+
+		Terms terms = new Terms();
+		new Lines(bytes, terms).scan();
+		index.addDocument(inputFile.toString(), terms.positions, terms.count - 1);
+	}
+
+	/**
+	 * Stems each word and buffers it at the next position.
+	 */
+	private static class Terms implements Consumer<String> {
+		private final HashMap<String, PositionList> positions;
+		private final StemCache stems;
+		private int count;
+
+		public Terms() {
+			this.positions = new HashMap<>();
+			this.stems = StemCache.shared();
+			this.count = 1;
+		}
+
+		@Override
+		public void accept(String word) {
+			positions.computeIfAbsent(stems.stem(word), stem -> new PositionList()).add(count);
+			count++;
+		}
+	}
+
+	/**
+	 * Scans the lines of a mapped file. Lines end at a carriage return or line
+	 * feed, as they do for {@link java.io.BufferedReader#readLine()}; a carriage
+	 * return followed by a line feed only adds an empty line, which has no words.
+	 */
+	private static class Lines {
+		private final ByteBuffer bytes;
+		private final Consumer<String> words;
+		private final ParserOfText.Scanner scanner;
+		private final CharsetDecoder decoder;
+		private CharBuffer chars;
+
+		public Lines(ByteBuffer bytes, Consumer<String> words) {
+			this.bytes = bytes;
+			this.words = words;
+			this.scanner = new ParserOfText.Scanner(words, ParserOfText.asciiCasing());
+			this.decoder = StandardCharsets.UTF_8.newDecoder();
+			this.chars = CharBuffer.allocate(1 << 10);
+		}
+
+		/**
+		 * Scans every line of the file.
+		 *
+		 * @throws IOException if the file is not valid UTF-8
+		 */
+		public void scan() throws IOException {
+			int limit = bytes.limit();
+			int start = 0;
+			while (start < limit) {
+				int end = start;
+				boolean sigma = false;
+				byte b;
+				while (end < limit && (b = bytes.get(end)) != '\n' && b != '\r') {
+					if (b == SIGMA_SECOND && end > start && bytes.get(end - 1) == SIGMA_FIRST) {
+						sigma = true;
+					}
+					end++;
+				}
+
+				if (sigma) {
+					ParserOfText.parse(decode(start, end), words);
+				} else {
+					line(start, end);
+				}
+				start = end + 1;
+			}
+		}
+
+		/**
+		 * Scans one line without a capital sigma.
+		 *
+		 * @param start the offset of the first byte of the line
+		 * @param end   the offset just after the last byte of the line
+		 * @throws IOException if the line is not valid UTF-8
+		 */
+		private void line(int start, int end) throws IOException {
+			int i = start;
+			while (i < end) {
+				byte b = bytes.get(i);
+				if (b >= 0) {
+					scanner.ascii((char) b);
+					i++;
+				} else {
+					int run = i + 1;
+					while (run < end && bytes.get(run) < 0) {
+						run++;
+					}
+					scanner.decompose(decode(i, run));
+					i = run;
+				}
+			}
+			scanner.finish();
+		}
+
+		/**
+		 * Decodes a range of bytes into a buffer reused between calls.
+		 *
+		 * @param start the offset of the first byte
+		 * @param end   the offset just after the last byte
+		 * @return the decoded characters, valid until the next call
+		 * @throws IOException if the bytes are not valid UTF-8
+		 */
+		private CharBuffer decode(int start, int end) throws IOException {
+			if (chars.capacity() < end - start) {
+				chars = CharBuffer.allocate(Math.max(end - start, chars.capacity() * 2));
+			}
+
+			ByteBuffer in = bytes.duplicate();
+			in.limit(end).position(start);
+			chars.clear();
+			decoder.reset();
+			CoderResult result = decoder.decode(in, chars, true);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+			result = decoder.flush(chars);
+			if (!result.isUnderflow()) {
+				result.throwException();
+			}
+			return chars.flip();
+		}
+	}
+}
@@ -0,0 +1,421 @@
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * A read-only index that searches a binary index file in place. The file is
+ * memory-mapped, so the postings live off-heap in the page cache and only the
+ * term dictionary and location table are kept on the heap. Files larger than
+ * one mapping are mapped in several chunks. Reads never change the state of the
+ * mapped buffers, so any number of threads may search the index without
+ * locking.
+ *
+ * @see IndexFile
+ */
+public class MappedInvertedIndex implements SearchableIndex {
+
+	/** The size of each mapped chunk, as a shift. */
+	private static final int CHUNK_SHIFT = 30;
+
+	/** The size of each mapped chunk in bytes. */
+	private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+	/** The size of the id, count and length before the positions of a posting. */
+	private static final int POSTING_HEADER = 3 * Integer.BYTES;
+
+	/** The mapped index file. */
+	private final Path path;
+
+	/** The mapped chunks of the file. */
+	private final MappedByteBuffer[] chunks;
+
+	/** Sorted array of every word in the index. */
+	private final String[] words;
+
+	/** The number of times each word was found. */
+	private final int[] frequencies;
+
+	/** The number of postings of each word. */
+	private final int[] postings;
+
+	/** The file offset of the first posting of each word. */
+	private final long[] offsets;
+
+	/** The location paths and totals of the index. */
+	private final DocumentTable documents;
+
+	/** The total number of word occurrences. */
+	private final long tokens;
+
+	/**
+	 * Maps an index file written by {@link FrozenInvertedIndex#save(Path)}.
+	 *
+	 * @param path the index file to map
+	 * @throws IOException if unable to read the file, or if it is not a valid
+	 *                     index file
+	 */
+	public MappedInvertedIndex(Path path) throws IOException {
+		this.path = path;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);) {
+			long size = channel.size();
+			if (size < IndexFile.HEADER_SIZE + IndexFile.FOOTER_SIZE) {
+				throw new IOException("Not an index file: " + path);
+			}
+
+			chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+			for (int chunk = 0; chunk < chunks.length; chunk++) {
+				long start = chunk * CHUNK_SIZE;
+				chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+			}
+
+			long footer = size - IndexFile.FOOTER_SIZE;
+			long dictionaryOffset = getLong(footer + Long.BYTES);
+			if (getInt(footer + 2 * Long.BYTES) != IndexFile.MAGIC || dictionaryOffset < 0 || dictionaryOffset > footer) {
+				throw new IOException("Corrupt index file: " + path);
+			}
+
+			DataInputStream in = IndexFile.open(channel, 0);
+			int wordCount = IndexFile.readHeader(in, path);
+			int documentCount = in.readInt();
+			in.readLong();
+			this.tokens = in.readLong();
+			this.documents = IndexFile.readDocuments(in, documentCount);
+
+			this.words = new String[wordCount];
+			this.frequencies = new int[wordCount];
+			this.postings = new int[wordCount];
+			this.offsets = new long[wordCount];
+
+			in = IndexFile.open(channel, dictionaryOffset);
+			for (int word = 0; word < wordCount; word++) {
+				words[word] = IndexFile.readString(in);
+				frequencies[word] = in.readInt();
+				postings[word] = in.readInt();
+				offsets[word] = in.readLong();
+			}
+		}
+	}
+
+	/**
+	 * Returns a byte of the file.
+	 *
+	 * @param offset the file offset
+	 * @return the byte at the offset
+	 */
+	private byte get(long offset) {
+		return chunks[(int) (offset >>> CHUNK_SHIFT)].get((int) (offset & (CHUNK_SIZE - 1)));
+	}
+
+	/**
+	 * Returns a big-endian int of the file, which may span two chunks.
+	 *
+	 * @param offset the file offset
+	 * @return the int at the offset
+	 */
+	private int getInt(long offset) {
+		MappedByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+		int index = (int) (offset & (CHUNK_SIZE - 1));
+		if (index + Integer.BYTES <= chunk.limit()) {
+			return chunk.getInt(index);
+		}
+
+		int value = 0;
+		for (int i = 0; i < Integer.BYTES; i++) {
+			value = (value << 8) | (get(offset + i) & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns a big-endian long of the file, which may span two chunks.
+	 *
+	 * @param offset the file offset
+	 * @return the long at the offset
+	 */
+	private long getLong(long offset) {
+		return ((long) getInt(offset) << 32) | (getInt(offset + Integer.BYTES) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Copies bytes of the file, which may span several chunks, to the heap.
+	 *
+	 * @param offset the file offset
+	 * @param length the number of bytes
+	 * @return the bytes at the offset
+	 */
+	private byte[] getBytes(long offset, int length) {
+		byte[] bytes = new byte[length];
+		int copied = 0;
+		while (copied < length) {
+			MappedByteBuffer chunk = chunks[(int) ((offset + copied) >>> CHUNK_SHIFT)];
+			int index = (int) ((offset + copied) & (CHUNK_SIZE - 1));
+			int count = Math.min(length - copied, chunk.limit() - index);
+			chunk.get(index, bytes, copied, count);
+			copied += count;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the file offset of the posting after the one at an offset.
+	 *
+	 * @param posting the file offset of a posting
+	 * @return the file offset of the next posting
+	 */
+	private long next(long posting) {
+		return posting + POSTING_HEADER + getInt(posting + 2 * Integer.BYTES);
+	}
+
+	/**
+	 * Reads the positions of a posting.
+	 *
+	 * @param posting the file offset of the posting
+	 * @return the compressed positions
+	 */
+	private PositionList positions(long posting) {
+		int length = getInt(posting + 2 * Integer.BYTES);
+		return new PositionList(getBytes(posting + POSTING_HEADER, length), getInt(posting + Integer.BYTES));
+	}
+
+	/**
+	 * Returns the index of a word in the dictionary.
+	 *
+	 * @param word the word to look for
+	 * @return the index of the word, or a negative value if it is not stored
+	 */
+	private int find(String word) {
+		return Arrays.binarySearch(words, word);
+	}
+
+	/**
+	 * Returns the file offset of the posting of a location within a word. The
+	 * postings of a word vary in length, so they are scanned in order of id.
+	 *
+	 * @param word     the index of the word
+	 * @param document the location id to look for
+	 * @return the file offset of the posting, or -1 if the location is not stored
+	 */
+	private long find(int word, int document) {
+		if (word < 0 || document < 0) {
+			return -1;
+		}
+
+		long posting = offsets[word];
+		for (int i = 0; i < postings[word]; i++) {
+			int location = getInt(posting);
+			if (location >= document) {
+				return location == document ? posting : -1;
+			}
+			posting = next(posting);
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the postings of a word with their location paths.
+	 *
+	 * @param word the index of the word
+	 * @return a sorted map of location paths to positions
+	 */
+	private TreeMap<String, PositionList> resolve(int word) {
+		TreeMap<String, PositionList> resolved = new TreeMap<>();
+		long posting = offsets[word];
+		for (int i = 0; i < postings[word]; i++) {
+			resolved.put(documents.getPath(getInt(posting)), positions(posting));
+			posting = next(posting);
+		}
+		return resolved;
+	}
+
+	/**
+	 * updates search results with every posting of a word
+	 *
+	 * @param word          the index of the word
+	 * @param lookup        a map of location ids to their search results
+	 * @param searchResults the list of search results
+	 */
+	private void searchHelper(int word, HashMap<Integer, SearchResult> lookup,
+			ArrayList<SearchResult> searchResults) {
+		long posting = offsets[word];
+		for (int i = 0; i < postings[word]; i++) {
+			int location = getInt(posting);
+			int count = getInt(posting + Integer.BYTES);
+			SearchResult result = lookup.get(location);
+			if (result != null) {
+				result.addCount(count);
+			} else {
+				SearchResult newMem = new SearchResult(location, count, documents);
+				lookup.put(location, newMem);
+				searchResults.add(newMem);
+			}
+			posting = next(posting);
+		}
+	}
+
+	/**
+	 * Copies the mapped index file to another file.
+	 *
+	 * @param target the file to write
+	 * @throws IOException if unable to copy the file
+	 */
+	public void save(Path target) throws IOException {
+		if (!Files.exists(target) || !Files.isSameFile(path, target)) {
+			Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		for (String queryWord : query) {
+			int word = find(queryWord);
+			if (word >= 0) {
+				searchHelper(word, lookup, searchResults);
+			}
+		}
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		for (String queryWord : query) {
+			int word = find(queryWord);
+			if (word < 0) {
+				word = -(word + 1);
+			}
+			while (word < words.length && words[word].startsWith(queryWord)) {
+				searchHelper(word, lookup, searchResults);
+				word++;
+			}
+		}
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	@Override
+	public void toJSON(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			writer.write("{");
+			for (int word = 0; word < words.length; word++) {
+				writer.write(System.lineSeparator());
+				JSONWriter.indent(1, writer);
+				writer.write("\"");
+				writer.write(words[word]);
+				writer.write("\"");
+				writer.write(": {");
+				JSONWriter.nestedObject(resolve(word), writer, 1);
+				if (word < words.length - 1) {
+					writer.write(",");
+				}
+			}
+			writer.write(System.lineSeparator());
+			writer.write("}");
+		}
+	}
+
+	@Override
+	public void outPutLocationMap(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			JSONWriter.asObject(documents.toMap(), writer, 0);
+		}
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return find(word) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String path) {
+		return find(find(word), documents.getId(path)) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String path, int position) {
+		long posting = find(find(word), documents.getId(path));
+		return posting >= 0 && positions(posting).contains(position);
+	}
+
+	@Override
+	public boolean contains(Path path) {
+		int document = documents.getId(path.toString());
+		return document >= 0 && documents.getTerms(document) > 0;
+	}
+
+	@Override
+	public int wordCount() {
+		return words.length;
+	}
+
+	@Override
+	public int pathCount(String word) {
+		int index = find(word);
+		return index >= 0 ? postings[index] : 0;
+	}
+
+	@Override
+	public int positionCount(String word, String path) {
+		long posting = find(find(word), documents.getId(path));
+		return posting >= 0 ? getInt(posting + Integer.BYTES) : 0;
+	}
+
+	@Override
+	public int wordCount(String word) {
+		int index = find(word);
+		return index >= 0 ? frequencies[index] : 0;
+	}
+
+	@Override
+	public int pathCount(Path path) {
+		int document = documents.getId(path.toString());
+		return document >= 0 ? documents.getTerms(document) : 0;
+	}
+
+	@Override
+	public long tokenCount() {
+		return tokens;
+	}
+
+	@Override
+	public int tokenCount(Path path) {
+		int document = documents.getId(path.toString());
+		return document >= 0 ? documents.getTotal(document) : 0;
+	}
+
+	@Override
+	public int locationCount() {
+		return documents.size();
+	}
+
+	/**
+	 * Returns a string representation of the index
+	 */
+	@Override
+	public String toString() {
+		TreeMap<String, TreeMap<String, PositionList>> resolved = new TreeMap<>();
+		for (int word = 0; word < words.length; word++) {
+			resolved.put(words[word], resolve(word));
+		}
+		return resolved.toString();
+	}
+}
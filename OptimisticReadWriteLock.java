@@ -0,0 +1,240 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A read/write lock without a shared monitor. Readers register in one of several
+ * padded counters picked by thread, so concurrent readers do not write to the
+ * same cache line. Writers announce themselves before waiting, and new readers
+ * back off while any writer is waiting, so writers are not starved by a steady
+ * stream of readers.
+ *
+ * Also supports optimistic reads: a reader takes a stamp, reads without
+ * registering, and then validates that no writer started in the meantime.
+ * Counters of how often and how long threads waited are kept for tuning.
+ *
+ * Read locks are reentrant: a thread that already holds the read lock takes it
+ * again without checking for waiting writers, since such a writer is waiting
+ * for that very thread to release its first hold.
+ */
+public class OptimisticReadWriteLock implements ReadWriteLock {
+
+	/** The number of longs between reader counters, to keep them on separate cache lines. */
+	private static final int PADDING = 16;
+
+	/** The number of reader counters. */
+	private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+	/** Padded per-stripe counts of active readers. */
+	private final AtomicLongArray readers;
+
+	/** The number of writers that are waiting for or holding the lock. */
+	private final AtomicInteger writers;
+
+	/** Whether a writer currently holds the lock. */
+	private final AtomicBoolean writing;
+
+	/** Incremented when a writer acquires and releases the lock; odd while held. */
+	private final AtomicLong version;
+
+	/** The number of read holds of each thread. */
+	private final ThreadLocal<int[]> holds;
+
+	private final LongAdder readWaits;
+	private final LongAdder readWaitNanos;
+	private final LongAdder writeWaits;
+	private final LongAdder writeWaitNanos;
+	private final LongAdder optimisticFailures;
+
+	/**
+	 * Initializes an unlocked optimistic lock.
+	 */
+	public OptimisticReadWriteLock() {
+		readers = new AtomicLongArray(STRIPES * PADDING);
+		writers = new AtomicInteger();
+		writing = new AtomicBoolean();
+		version = new AtomicLong();
+		holds = ThreadLocal.withInitial(() -> new int[1]);
+		readWaits = new LongAdder();
+		readWaitNanos = new LongAdder();
+		writeWaits = new LongAdder();
+		writeWaitNanos = new LongAdder();
+		optimisticFailures = new LongAdder();
+	}
+
+	/**
+	 * Returns the reader counter used by the current thread.
+	 *
+	 * @return the index of the counter in the readers array
+	 */
+	private static int stripe() {
+		long id = Thread.currentThread().getId();
+		return (int) ((id ^ (id >>> 16)) & (STRIPES - 1)) * PADDING;
+	}
+
+	/**
+	 * Waits a little before trying again: spins first, then yields, then parks.
+	 *
+	 * @param attempts the number of attempts made so far
+	 */
+	private static void backoff(int attempts) {
+		if (attempts < 64) {
+			Thread.onSpinWait();
+		} else if (attempts < 128) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(50_000);
+		}
+	}
+
+	/**
+	 * Returns the number of readers holding the lock.
+	 *
+	 * @return the sum of every reader counter
+	 */
+	private long activeReaders() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += readers.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	/**
+	 * Will wait until there are no active or waiting writers, and then will
+	 * register the current thread as a reader. A thread that already holds the
+	 * read lock registers again without waiting.
+	 */
+	@Override
+	public void lockReadOnly() {
+		int stripe = stripe();
+		int[] held = holds.get();
+		if (held[0] > 0) {
+			readers.incrementAndGet(stripe);
+			held[0]++;
+			return;
+		}
+
+		long start = 0;
+		int attempts = 0;
+
+		while (true) {
+			if (writers.get() == 0) {
+				readers.incrementAndGet(stripe);
+				if (writers.get() == 0) {
+					break;
+				}
+				readers.decrementAndGet(stripe);
+			}
+			if (start == 0) {
+				start = System.nanoTime();
+			}
+			backoff(attempts++);
+		}
+		held[0] = 1;
+
+		if (start != 0) {
+			readWaits.increment();
+			readWaitNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Will decrease the number of active readers.
+	 */
+	@Override
+	public void unlockReadOnly() {
+		holds.get()[0]--;
+		readers.decrementAndGet(stripe());
+	}
+
+	/**
+	 * Will announce a waiting writer, then wait until there are no active readers
+	 * or writers before taking the lock.
+	 */
+	@Override
+	public void lockReadWrite() {
+		writers.incrementAndGet();
+		long start = 0;
+		int attempts = 0;
+
+		while (!writing.compareAndSet(false, true)) {
+			if (start == 0) {
+				start = System.nanoTime();
+			}
+			backoff(attempts++);
+		}
+
+		while (activeReaders() != 0) {
+			if (start == 0) {
+				start = System.nanoTime();
+			}
+			backoff(attempts++);
+		}
+
+		version.incrementAndGet();
+
+		if (start != 0) {
+			writeWaits.increment();
+			writeWaitNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Will release the lock and let waiting readers continue once no other writer
+	 * is waiting.
+	 */
+	@Override
+	public void unlockReadWrite() {
+		version.incrementAndGet();
+		writing.set(false);
+		writers.decrementAndGet();
+	}
+
+	/**
+	 * Returns a stamp for an optimistic read, or 0 if a writer holds the lock.
+	 *
+	 * @return a stamp to pass to {@link #validate(long)}
+	 */
+	public long tryOptimisticRead() {
+		long stamp = version.get();
+		return (stamp & 1) == 0 ? stamp | Long.MIN_VALUE : 0;
+	}
+
+	/**
+	 * Tests whether no writer has acquired the lock since the stamp was taken.
+	 *
+	 * @param stamp a stamp from {@link #tryOptimisticRead()}
+	 * @return true if the values read since the stamp was taken are consistent
+	 */
+	public boolean validate(long stamp) {
+		VarHandle.acquireFence();
+		if (stamp != 0 && version.get() == (stamp & Long.MAX_VALUE)) {
+			return true;
+		}
+		optimisticFailures.increment();
+		return false;
+	}
+
+	/**
+	 * Returns a snapshot of the contention counters of the lock.
+	 *
+	 * @return the counters of how often and how long threads waited
+	 */
+	public LockContention contention() {
+		return new LockContention(readWaits.sum(), readWaitNanos.sum(), writeWaits.sum(), writeWaitNanos.sum(),
+				optimisticFailures.sum());
+	}
+
+	/**
+	 * Returns a summary of the contention counters
+	 */
+	@Override
+	public String toString() {
+		return contention().toString();
+	}
+}
@@ -1,4 +1,7 @@
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 
@@ -10,6 +13,9 @@ public class ParserOfText {
 	public static final Pattern SPLIT_REGEX = Pattern.compile("(?U)\\p{Space}+");
 	public static final Pattern CLEAN_REGEX = Pattern.compile("(?U)[^\\p{Alpha}\\p{Space}]+");
 
+	/** An empty array of words. */
+	private static final String[] EMPTY = new String[0];
+
 	/**
 	 * Cleans the text by removing any non-alphabetic characters (e.g. non-letters
 	 * like digits, punctuation, symbols, and diacritical marks like the umlaut) and
@@ -37,7 +43,209 @@ public class ParserOfText {
 		text = text.trim();
 		return text.isEmpty() ? new String[0] : SPLIT_REGEX.split(text);
 	}
+
+	/**
+	 * Cleans and splits the text into words. Produces exactly the same words as
+	 * {@code split(clean(text))}, but in a single pass.
+	 *
+	 * @param text the text to parse
+	 * @return an array of cleaned words
+	 *
+	 * @see #parse(CharSequence, Consumer)
+	 */
 	public static String[] parse(String text) {
-		return split(clean(text));
+		ArrayList<String> words = new ArrayList<>();
+		parse(text, words::add);
+		return words.isEmpty() ? EMPTY : words.toArray(EMPTY);
+	}
+
+	/**
+	 * Cleans and splits the text into words in a single pass, passing each word to
+	 * the consumer. ASCII letters are lowercased as they are scanned; only runs of
+	 * non-ASCII characters are decomposed with {@link Normalizer}, and only words
+	 * containing them (or any word, in locales with special casing of ASCII
+	 * letters) are lowercased with {@link String#toLowerCase()}.
+	 *
+	 * Like {@code split(clean(text))}, a line whose first remaining character after
+	 * trimming is non-ASCII whitespace produces a leading empty word. Lines with a
+	 * capital sigma are cleaned and split as a whole, since whether it lowercases to
+	 * a final sigma depends on the word boundaries of the whole line.
+	 *
+	 * @param text  the text to parse
+	 * @param words the consumer of the cleaned words
+	 */
+	public static void parse(CharSequence text, Consumer<String> words) {
+		if (hasSigma(text)) {
+			for (String word : split(clean(text))) {
+				words.accept(word);
+			}
+			return;
+		}
+
+		Scanner scanner = new Scanner(words, asciiCasing());
+		int length = text.length();
+		int i = 0;
+
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				scanner.ascii(c);
+				i++;
+			} else {
+				int end = i + 1;
+				while (end < length && text.charAt(end) >= 0x80) {
+					end++;
+				}
+				scanner.decompose(text.subSequence(i, end));
+				i = end;
+			}
+		}
+		scanner.finish();
+	}
+
+	/**
+	 * Returns whether ASCII letters lowercase to the same letters in the default
+	 * locale, so they may be lowercased directly.
+	 *
+	 * @return false in locales with special casing of ASCII letters
+	 */
+	static boolean asciiCasing() {
+		String language = Locale.getDefault().getLanguage();
+		return !language.equals("tr") && !language.equals("az") && !language.equals("lt");
+	}
+
+	/**
+	 * Returns whether the text contains a capital sigma.
+	 *
+	 * @param text the text to search
+	 * @return true if the text contains a capital sigma
+	 */
+	private static boolean hasSigma(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\u03A3') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether a code point is whitespace, as matched by
+	 * {@code (?U)\p{Space}}.
+	 *
+	 * @param ch the code point to test
+	 * @return true if the code point is Unicode whitespace
+	 */
+	static boolean isSpace(int ch) {
+		return ((((1 << Character.SPACE_SEPARATOR) | (1 << Character.LINE_SEPARATOR)
+				| (1 << Character.PARAGRAPH_SEPARATOR)) >> Character.getType(ch)) & 1) != 0
+				|| (ch >= 0x9 && ch <= 0xd) || (ch == 0x85);
+	}
+
+	/**
+	 * Accumulates the characters of one line into words.
+	 */
+	static class Scanner {
+		private final Consumer<String> words;
+		private final boolean asciiCasing;
+		private final StringBuilder word;
+
+		/** Whether the current word needs {@link String#toLowerCase()}. */
+		private boolean special;
+
+		/** Whether no letters or non-ASCII whitespace have been seen yet. */
+		private boolean leading;
+
+		/** Whether an empty word must be produced before the next word. */
+		private boolean leadingEmpty;
+
+		/**
+		 * @param words       the consumer of the cleaned words
+		 * @param asciiCasing whether ASCII letters may be lowercased directly
+		 */
+		Scanner(Consumer<String> words, boolean asciiCasing) {
+			this.words = words;
+			this.asciiCasing = asciiCasing;
+			this.word = new StringBuilder();
+			this.special = false;
+			this.leading = true;
+			this.leadingEmpty = false;
+		}
+
+		/**
+		 * Scans an ASCII character.
+		 *
+		 * @param c the character
+		 */
+		void ascii(char c) {
+			if (c >= 'a' && c <= 'z') {
+				word.append(c);
+				leading = false;
+			} else if (c >= 'A' && c <= 'Z') {
+				if (asciiCasing) {
+					word.append((char) (c | 0x20));
+				} else {
+					word.append(c);
+					special = true;
+				}
+				leading = false;
+			} else if (c == ' ' || (c >= 0x9 && c <= 0xd)) {
+				end();
+			}
+		}
+
+		/**
+		 * Decomposes a run of non-ASCII characters and scans the result. Since
+		 * ASCII characters never combine with their neighbours, decomposing each run
+		 * separately matches decomposing the whole line.
+		 *
+		 * @param run the characters
+		 */
+		void decompose(CharSequence run) {
+			String decomposed = Normalizer.normalize(run, Normalizer.Form.NFD);
+			int length = decomposed.length();
+			int i = 0;
+			while (i < length) {
+				int cp = decomposed.codePointAt(i);
+				i += Character.charCount(cp);
+				if (Character.isAlphabetic(cp)) {
+					word.appendCodePoint(cp);
+					special = true;
+					leading = false;
+				} else if (isSpace(cp)) {
+					if (leading && cp >= 0x80) {
+						leadingEmpty = true;
+						leading = false;
+					}
+					end();
+				}
+			}
+		}
+
+		/**
+		 * Ends the current word, if there is one.
+		 */
+		void end() {
+			if (word.length() == 0) {
+				return;
+			}
+			if (leadingEmpty) {
+				words.accept("");
+				leadingEmpty = false;
+			}
+			String text = word.toString();
+			words.accept(special ? text.toLowerCase() : text);
+			word.setLength(0);
+			special = false;
+		}
+
+		/**
+		 * Ends the line, so the scanner may be reused for the next line.
+		 */
+		void finish() {
+			end();
+			leading = true;
+			leadingEmpty = false;
+		}
 	}
 }
@@ -0,0 +1,307 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A compact list of the positions a word was found at within a single location.
+ * Positions are stored as primitive ints in a growable array, kept in increasing
+ * order without duplicates. Once a location has been fully parsed the list may
+ * be compressed into delta + variable-length byte encoding, which keeps the
+ * position count available without decoding.
+ */
+public class PositionList {
+
+	/** The initial capacity of a new list. */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** Sorted positions, or null while the list is compressed. */
+	private int[] positions;
+
+	/** Delta + varint encoded positions, or null while the list is expanded. */
+	private byte[] encoded;
+
+	/** The number of positions stored in the list. */
+	private int size;
+
+	/**
+	 * Initializes an empty position list
+	 */
+	public PositionList() {
+		positions = new int[INITIAL_CAPACITY];
+		encoded = null;
+		size = 0;
+	}
+
+	/**
+	 * Initializes a compressed list from already encoded positions
+	 *
+	 * @param encoded the delta + varint encoded positions
+	 * @param size    the number of encoded positions
+	 */
+	PositionList(byte[] encoded, int size) {
+		this.positions = null;
+		this.encoded = encoded;
+		this.size = size;
+	}
+
+	/**
+	 * Returns a compressed copy of the list. The encoded bytes are never modified
+	 * in place, so a copy of an already compressed list shares them.
+	 *
+	 * @return a compressed copy of the list
+	 */
+	public PositionList copy() {
+		if (encoded == null) {
+			PositionList copy = new PositionList();
+			copy.positions = Arrays.copyOf(positions, Math.max(size, INITIAL_CAPACITY));
+			copy.size = size;
+			copy.compress();
+			return copy;
+		}
+		return new PositionList(encoded, size);
+	}
+
+	/**
+	 * Adds a position to the list. Positions that arrive in increasing order are
+	 * appended, anything else is inserted in sorted order.
+	 *
+	 * @param position the position to add
+	 *
+	 * @return true if the position was not already in the list
+	 */
+	public boolean add(int position) {
+		expand();
+
+		if (size == 0 || position > positions[size - 1]) {
+			ensureCapacity(size + 1);
+			positions[size++] = position;
+			return true;
+		}
+
+		int index = Arrays.binarySearch(positions, 0, size, position);
+		if (index >= 0) {
+			return false;
+		}
+
+		index = -(index + 1);
+		ensureCapacity(size + 1);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		positions[index] = position;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds every position from another list to this list.
+	 *
+	 * @param other the list of positions to add
+	 */
+	public void addAll(PositionList other) {
+		addAll(other, 0);
+	}
+
+	/**
+	 * Adds every position from another list to this list, shifted by an offset.
+	 *
+	 * @param other  the list of positions to add
+	 * @param offset the amount to add to each position
+	 */
+	public void addAll(PositionList other, int offset) {
+		if (other.size == 0) {
+			return;
+		}
+
+		expand();
+
+		PrimitiveIterator.OfInt iterator = other.iterator();
+		if (size == 0 || other.first() + offset > positions[size - 1]) {
+			ensureCapacity(size + other.size);
+			while (iterator.hasNext()) {
+				positions[size++] = iterator.nextInt() + offset;
+			}
+		} else {
+			while (iterator.hasNext()) {
+				add(iterator.nextInt() + offset);
+			}
+		}
+	}
+
+	/**
+	 * Tests whether the list contains a position.
+	 *
+	 * @param position the position to look for
+	 *
+	 * @return true if the position is stored in the list
+	 */
+	public boolean contains(int position) {
+		if (encoded == null) {
+			return Arrays.binarySearch(positions, 0, size, position) >= 0;
+		}
+
+		PrimitiveIterator.OfInt iterator = iterator();
+		while (iterator.hasNext()) {
+			int next = iterator.nextInt();
+			if (next >= position) {
+				return next == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of positions in the list.
+	 *
+	 * @return the number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the first (smallest) position in the list.
+	 *
+	 * @return the first position
+	 */
+	public int first() {
+		if (size == 0) {
+			throw new NoSuchElementException();
+		}
+		return encoded == null ? positions[0] : iterator().nextInt();
+	}
+
+	/**
+	 * Returns whether the list is currently stored in its compressed form.
+	 *
+	 * @return true if the list is compressed
+	 */
+	public boolean isCompressed() {
+		return encoded != null;
+	}
+
+	/**
+	 * Delta + varint encodes the positions and releases the int buffer. Later
+	 * additions will expand the list again.
+	 */
+	public void compress() {
+		if (encoded != null) {
+			return;
+		}
+
+		byte[] buffer = new byte[size * 5];
+		int length = 0;
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			int delta = positions[i] - previous;
+			previous = positions[i];
+			while ((delta & ~0x7F) != 0) {
+				buffer[length++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			buffer[length++] = (byte) delta;
+		}
+
+		encoded = Arrays.copyOf(buffer, length);
+		positions = null;
+	}
+
+	/**
+	 * Returns the delta + varint encoded positions, compressing the list first if
+	 * needed. The bytes must not be modified.
+	 *
+	 * @return the encoded positions
+	 */
+	byte[] encoded() {
+		compress();
+		return encoded;
+	}
+
+	/**
+	 * Returns the positions as a new sorted int array.
+	 *
+	 * @return an array of the positions
+	 */
+	public int[] toArray() {
+		if (encoded == null) {
+			return Arrays.copyOf(positions, size);
+		}
+
+		int[] result = new int[size];
+		PrimitiveIterator.OfInt iterator = iterator();
+		for (int i = 0; i < size; i++) {
+			result[i] = iterator.nextInt();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns an iterator over the positions in increasing order. Iterating a
+	 * compressed list decodes it on the fly without expanding it.
+	 *
+	 * @return an iterator of the positions
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		if (encoded == null) {
+			return Arrays.stream(positions, 0, size).iterator();
+		}
+
+		return new PrimitiveIterator.OfInt() {
+			private int offset = 0;
+			private int remaining = size;
+			private int previous = 0;
+
+			@Override
+			public boolean hasNext() {
+				return remaining > 0;
+			}
+
+			@Override
+			public int nextInt() {
+				if (remaining == 0) {
+					throw new NoSuchElementException();
+				}
+				int delta = 0;
+				int shift = 0;
+				byte next;
+				do {
+					next = encoded[offset++];
+					delta |= (next & 0x7F) << shift;
+					shift += 7;
+				} while (next < 0);
+
+				remaining--;
+				previous += delta;
+				return previous;
+			}
+		};
+	}
+
+	/**
+	 * Decodes a compressed list back into its int buffer.
+	 */
+	private void expand() {
+		if (encoded != null) {
+			int[] expanded = toArray();
+			positions = expanded.length < INITIAL_CAPACITY ? Arrays.copyOf(expanded, INITIAL_CAPACITY) : expanded;
+			encoded = null;
+		}
+	}
+
+	/**
+	 * Grows the int buffer so it can hold at least the requested capacity.
+	 *
+	 * @param capacity the minimum capacity needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(capacity, positions.length + (positions.length >> 1)));
+		}
+	}
+
+	/**
+	 * Returns a string representation of the positions
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+}
@@ -7,13 +7,11 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 public class QueryFileParser implements FileParser {
 
 	private final TreeMap<String, ArrayList<SearchResult>> resultMap;
-	private final InvertedIndex index;
+	private final SearchableIndex index;
 
 	/**
 	 * initializes a TreeMap<String, ArrayList<SearchResult>> called a resultMap to
@@ -21,7 +19,7 @@ public class QueryFileParser implements FileParser {
 	 * 
 	 * @param InvertedIndex
 	 */
-	public QueryFileParser(InvertedIndex index) {
+	public QueryFileParser(SearchableIndex index) {
 		resultMap = new TreeMap<>();
 		this.index = index;
 	}
@@ -29,7 +27,7 @@ public class QueryFileParser implements FileParser {
 	@Override
 	public void parseQueryFile(Path queryPath, boolean searchFlag) throws IOException {
 
-		Stemmer wordStemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		StemCache stems = StemCache.shared();
 
 		try (BufferedReader reader = Files.newBufferedReader(queryPath, StandardCharsets.UTF_8);) {
 
@@ -44,7 +42,7 @@ public class QueryFileParser implements FileParser {
 				TreeSet<String> words = new TreeSet<String>();
 
 				for (String wordi : parsed) {
-					words.add(wordStemmer.stem(wordi).toString());
+					words.add(stems.stem(wordi));
 				}
 
 				String stringLine = String.join(" ", words);
@@ -0,0 +1,493 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters and timings of the tasks run by a {@link WorkQueue}: how long tasks
+ * wait between being executed and starting, how long they run, how many are
+ * waiting to start, how busy each worker thread is, and how many tasks
+ * completed or failed. Every counter is updated without locking, so the
+ * metrics may be read while the queue is running.
+ *
+ * @see WorkQueue#enableMetrics()
+ */
+public class QueueMetrics {
+
+	/** The time the metrics were started at, in nanoseconds. */
+	private final long started;
+
+	/** The number of worker threads of the queue. */
+	private final int threads;
+
+	/** Names the worker running the calling thread. */
+	private final Supplier<String> workerName;
+
+	/** Time from execute to the start of each task, in nanoseconds. */
+	private final Histogram wait;
+
+	/** Time each task ran for, in nanoseconds. */
+	private final Histogram run;
+
+	/** The number of tasks executed but not started yet. */
+	private final AtomicInteger depth;
+
+	/** The largest number of tasks that were waiting to start at once. */
+	private final AtomicInteger peakDepth;
+
+	private final LongAdder completed;
+	private final LongAdder failed;
+
+	/** Whether the task running on each thread reported a failure, while it runs. */
+	private final ThreadLocal<boolean[]> failing;
+
+	/** The busy time and task count of each worker, by name. */
+	private final ConcurrentHashMap<String, Worker> workers;
+
+	/**
+	 * Initializes empty metrics.
+	 *
+	 * @param threads    the number of worker threads of the queue
+	 * @param workerName names the worker running the calling thread
+	 */
+	public QueueMetrics(int threads, Supplier<String> workerName) {
+		this.started = System.nanoTime();
+		this.threads = threads;
+		this.workerName = workerName;
+		this.wait = new Histogram();
+		this.run = new Histogram();
+		this.depth = new AtomicInteger();
+		this.peakDepth = new AtomicInteger();
+		this.completed = new LongAdder();
+		this.failed = new LongAdder();
+		this.failing = new ThreadLocal<>();
+		this.workers = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Adds a worker before it runs any task, so workers that stay idle are
+	 * reported with no busy time instead of being left out.
+	 *
+	 * @param name   the name of the worker
+	 * @param shared whether the worker stands for any number of threads running
+	 *               at once, such as every virtual thread of a queue
+	 */
+	public void register(String name, boolean shared) {
+		workers.putIfAbsent(name, new Worker(shared));
+	}
+
+	/**
+	 * Counts a task as waiting to start, and wraps it to record its wait time, run
+	 * time and outcome once it runs. A task fails if it throws, or if it reports
+	 * a failure through {@link #fail()} while it runs.
+	 *
+	 * @param r the task being executed
+	 * @return the task to run instead
+	 */
+	public Runnable track(Runnable r) {
+		long enqueued = System.nanoTime();
+		peakDepth.accumulateAndGet(depth.incrementAndGet(), Math::max);
+
+		return () -> {
+			long start = System.nanoTime();
+			depth.decrementAndGet();
+			wait.record(start - enqueued);
+
+			boolean[] failure = new boolean[1];
+			boolean[] outer = failing.get();
+			failing.set(failure);
+
+			boolean ok = false;
+			try {
+				r.run();
+				ok = !failure[0];
+			} finally {
+				if (outer == null) {
+					failing.remove();
+				} else {
+					failing.set(outer);
+				}
+				long time = System.nanoTime() - start;
+				run.record(time);
+				workers.computeIfAbsent(workerName.get(), name -> new Worker(false)).add(time);
+				if (ok) {
+					completed.increment();
+				} else {
+					failed.increment();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Counts the task running on the calling thread as failed, for tasks that
+	 * handle their own exceptions instead of throwing them. If the calling thread
+	 * is not running a tracked task, the failure is counted on its own.
+	 */
+	public void fail() {
+		boolean[] failure = failing.get();
+		if (failure != null) {
+			failure[0] = true;
+		} else {
+			failed.increment();
+		}
+	}
+
+	/**
+	 * Returns the distribution of the time tasks waited to start.
+	 *
+	 * @return the wait times in nanoseconds
+	 */
+	public Histogram waitTimes() {
+		return wait;
+	}
+
+	/**
+	 * Returns the distribution of the time tasks ran for.
+	 *
+	 * @return the run times in nanoseconds
+	 */
+	public Histogram runTimes() {
+		return run;
+	}
+
+	/**
+	 * Returns the number of tasks executed but not started yet.
+	 *
+	 * @return the current queue depth
+	 */
+	public int depth() {
+		return depth.get();
+	}
+
+	/**
+	 * Returns the largest number of tasks that were waiting to start at once.
+	 *
+	 * @return the peak queue depth
+	 */
+	public int peakDepth() {
+		return peakDepth.get();
+	}
+
+	/**
+	 * Returns the number of tasks that ran without throwing.
+	 *
+	 * @return number of completed tasks
+	 */
+	public long completed() {
+		return completed.sum();
+	}
+
+	/**
+	 * Returns the number of tasks that threw an exception or reported a failure.
+	 *
+	 * @return number of failed tasks
+	 */
+	public long failed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Returns the time each worker spent running tasks.
+	 *
+	 * @return map of worker names to busy time in nanoseconds
+	 */
+	public TreeMap<String, Long> busyTimes() {
+		TreeMap<String, Long> busy = new TreeMap<>();
+		for (Map.Entry<String, Worker> worker : workers.entrySet()) {
+			busy.put(worker.getKey(), worker.getValue().busy.sum());
+		}
+		return busy;
+	}
+
+	/**
+	 * Returns the time since the metrics were started.
+	 *
+	 * @return the elapsed time in nanoseconds
+	 */
+	public long elapsed() {
+		return System.nanoTime() - started;
+	}
+
+	/**
+	 * Writes the metrics in JSON format to the specified file.
+	 *
+	 * @param path the path to the output file location
+	 * @throws IOException if unable to write the file
+	 */
+	public void toJSON(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			toJSON(writer, 0);
+		}
+	}
+
+	/**
+	 * Writes the metrics in JSON format. Times are in milliseconds, except for the
+	 * histograms, which are in microseconds. A shared worker runs any number of
+	 * tasks at once, so it has no idle time; its average number of tasks running
+	 * at once is written instead of its utilization.
+	 *
+	 * @param writer the writer to write to
+	 * @param level  indent level to begin at for JSON outputting
+	 * @throws IOException if unable to write
+	 */
+	public void toJSON(Writer writer, int level) throws IOException {
+		long elapsed = elapsed();
+		writer.write("{");
+		writer.write(System.lineSeparator());
+		field("threads", Integer.toString(threads), writer, level + 1, true);
+		field("elapsed_ms", millis(elapsed), writer, level + 1, true);
+		field("completed", Long.toString(completed()), writer, level + 1, true);
+		field("failed", Long.toString(failed()), writer, level + 1, true);
+		field("depth", Integer.toString(depth()), writer, level + 1, true);
+		field("peak_depth", Integer.toString(peakDepth()), writer, level + 1, true);
+
+		field("wait_us", null, writer, level + 1, false);
+		wait.toJSON(writer, level + 1);
+		writer.write(",");
+		writer.write(System.lineSeparator());
+
+		field("run_us", null, writer, level + 1, false);
+		run.toJSON(writer, level + 1);
+		writer.write(",");
+		writer.write(System.lineSeparator());
+
+		field("workers", null, writer, level + 1, false);
+		writer.write("{");
+		writer.write(System.lineSeparator());
+		TreeMap<String, Worker> sorted = new TreeMap<>(workers);
+		for (Map.Entry<String, Worker> entry : sorted.entrySet()) {
+			Worker worker = entry.getValue();
+			long busy = worker.busy.sum();
+			field(entry.getKey(), null, writer, level + 2, false);
+			writer.write("{");
+			writer.write(System.lineSeparator());
+			field("tasks", Long.toString(worker.tasks.sum()), writer, level + 3, true);
+			field("busy_ms", millis(busy), writer, level + 3, true);
+			if (worker.shared) {
+				field("concurrency", decimal(elapsed > 0 ? (double) busy / elapsed : 0), writer, level + 3, false);
+			} else {
+				field("idle_ms", millis(Math.max(0, elapsed - busy)), writer, level + 3, true);
+				field("utilization", decimal(elapsed > 0 ? (double) busy / elapsed : 0), writer, level + 3, false);
+			}
+			writer.write(System.lineSeparator());
+			JSONWriter.indent(level + 2, writer);
+			writer.write("}");
+			if (!entry.getKey().equals(sorted.lastKey())) {
+				writer.write(",");
+			}
+			writer.write(System.lineSeparator());
+		}
+		JSONWriter.indent(level + 1, writer);
+		writer.write("}");
+		writer.write(System.lineSeparator());
+
+		JSONWriter.indent(level, writer);
+		writer.write("}");
+	}
+
+	/**
+	 * Writes the key of a JSON field, followed by its value if there is one.
+	 *
+	 * @param key    the key of the field
+	 * @param value  the JSON value of the field, or null to write it separately
+	 * @param writer the writer to write to
+	 * @param level  indent level of the field
+	 * @param more   whether another field follows this one
+	 * @throws IOException if unable to write
+	 */
+	private static void field(String key, String value, Writer writer, int level, boolean more) throws IOException {
+		JSONWriter.indent(level, writer);
+		writer.write("\"");
+		writer.write(key);
+		writer.write("\": ");
+		if (value != null) {
+			writer.write(value);
+			if (more) {
+				writer.write(",");
+				writer.write(System.lineSeparator());
+			}
+		}
+	}
+
+	/**
+	 * Formats nanoseconds as milliseconds.
+	 *
+	 * @param nanos the time in nanoseconds
+	 * @return the time in milliseconds, with three decimals
+	 */
+	private static String millis(long nanos) {
+		return decimal(nanos / 1e6);
+	}
+
+	/**
+	 * Formats a number with three decimals.
+	 *
+	 * @param value the number to format
+	 * @return the formatted number
+	 */
+	private static String decimal(double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	/**
+	 * The busy time and task count of one worker.
+	 */
+	private static class Worker {
+		private final LongAdder tasks = new LongAdder();
+		private final LongAdder busy = new LongAdder();
+
+		/** Whether the worker stands for any number of threads running at once. */
+		private final boolean shared;
+
+		public Worker(boolean shared) {
+			this.shared = shared;
+		}
+
+		/**
+		 * Records a task run by the worker.
+		 *
+		 * @param time the run time in nanoseconds
+		 */
+		public void add(long time) {
+			tasks.increment();
+			busy.add(time);
+		}
+	}
+
+	/**
+	 * A histogram of nanosecond durations in power of two buckets, so recording is
+	 * a single atomic increment and the quantiles are accurate to within a factor
+	 * of two.
+	 */
+	public static class Histogram {
+		/** Bucket i counts the durations below 2^i nanoseconds, but not below 2^(i-1). */
+		private final AtomicLongArray buckets;
+		private final LongAdder count;
+		private final LongAdder sum;
+		private final AtomicLong max;
+
+		public Histogram() {
+			this.buckets = new AtomicLongArray(64);
+			this.count = new LongAdder();
+			this.sum = new LongAdder();
+			this.max = new AtomicLong();
+		}
+
+		/**
+		 * Records a duration.
+		 *
+		 * @param nanos the duration in nanoseconds
+		 */
+		public void record(long nanos) {
+			nanos = Math.max(0, nanos);
+			buckets.incrementAndGet(Math.min(63, 64 - Long.numberOfLeadingZeros(nanos)));
+			count.increment();
+			sum.add(nanos);
+			max.accumulateAndGet(nanos, Math::max);
+		}
+
+		/**
+		 * Returns the number of durations recorded.
+		 *
+		 * @return number of durations
+		 */
+		public long count() {
+			return count.sum();
+		}
+
+		/**
+		 * Returns the mean of the durations recorded.
+		 *
+		 * @return the mean in nanoseconds, or 0 if there are none
+		 */
+		public double mean() {
+			long n = count();
+			return n == 0 ? 0 : (double) sum.sum() / n;
+		}
+
+		/**
+		 * Returns the longest duration recorded.
+		 *
+		 * @return the maximum in nanoseconds
+		 */
+		public long max() {
+			return max.get();
+		}
+
+		/**
+		 * Returns an upper bound of a quantile of the durations recorded.
+		 *
+		 * @param quantile the quantile, between 0 and 1
+		 * @return the upper bound of the bucket holding the quantile, in nanoseconds
+		 */
+		public long quantile(double quantile) {
+			long n = count();
+			long rank = (long) Math.ceil(quantile * n);
+			long seen = 0;
+			for (int i = 0; i < 64; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank && seen > 0) {
+					return Math.min(max(), i == 0 ? 0 : (1L << Math.min(62, i)) - 1);
+				}
+			}
+			return max();
+		}
+
+		/**
+		 * Writes the histogram in JSON format, with durations in microseconds. Only
+		 * the buckets holding durations are written, each keyed by its upper bound.
+		 *
+		 * @param writer the writer to write to
+		 * @param level  indent level to begin at for JSON outputting
+		 * @throws IOException if unable to write
+		 */
+		public void toJSON(Writer writer, int level) throws IOException {
+			writer.write("{");
+			writer.write(System.lineSeparator());
+			field("count", Long.toString(count()), writer, level + 1, true);
+			field("mean", decimal(mean() / 1e3), writer, level + 1, true);
+			field("p50", decimal(quantile(0.5) / 1e3), writer, level + 1, true);
+			field("p90", decimal(quantile(0.9) / 1e3), writer, level + 1, true);
+			field("p99", decimal(quantile(0.99) / 1e3), writer, level + 1, true);
+			field("max", decimal(max() / 1e3), writer, level + 1, true);
+
+			field("buckets", null, writer, level + 1, false);
+			writer.write("{");
+			int last = -1;
+			for (int i = 0; i < 64; i++) {
+				if (buckets.get(i) > 0) {
+					last = i;
+				}
+			}
+			for (int i = 0; i <= last; i++) {
+				long bucket = buckets.get(i);
+				if (bucket == 0) {
+					continue;
+				}
+				writer.write(System.lineSeparator());
+				field("<" + decimal((1L << Math.min(62, i)) / 1e3), Long.toString(bucket), writer, level + 2, false);
+				if (i != last) {
+					writer.write(",");
+				}
+			}
+			writer.write(System.lineSeparator());
+			JSONWriter.indent(level + 1, writer);
+			writer.write("}");
+			writer.write(System.lineSeparator());
+			JSONWriter.indent(level, writer);
+			writer.write("}");
+		}
+	}
+}
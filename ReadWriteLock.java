@@ -1,72 +1,30 @@
-
 /**
- * A simple custom lock that allows simultaneously read operations, but
- * disallows simultaneously write and read/write operations.
- *
- * Does not implement any form or priority to read or write operations. The
- * first thread that acquires the appropriate lock should be allowed to
- * continue.
+ * A lock that allows simultaneous read operations, but disallows simultaneous
+ * write and read/write operations. Implemented by the monitor based
+ * {@link SimpleReadWriteLock} and by {@link OptimisticReadWriteLock}, which
+ * also supports optimistic reads.
  */
-public class ReadWriteLock {
-	private int readers;
-	private int writers;
+public interface ReadWriteLock {
 
 	/**
-	 * Initializes a multi-reader single-writer lock.
+	 * Waits until there are no active writers, and then registers the current
+	 * thread as a reader.
 	 */
-	public ReadWriteLock() {
-		readers = 0;
-		writers = 0;
-	}
+	public abstract void lockReadOnly();
 
 	/**
-	 * Will wait until there are no active writers in the system, and then will
-	 * increase the number of active readers.
+	 * Releases a read lock taken by {@link #lockReadOnly()}.
 	 */
-	public synchronized void lockReadOnly() {
-		while (writers > 0) {
-			try {
-				this.wait();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		readers++;
-	}
-
-	/**
-	 * Will decrease the number of active readers, and notify any waiting threads if
-	 * necessary.
-	 */
-
-	public synchronized void unlockReadOnly() {
-		readers--;
-		if (readers < 1) {
-			this.notifyAll();
-		}
-	}
+	public abstract void unlockReadOnly();
 
 	/**
-	 * Will wait until there are no active readers or writers in the system, and
-	 * then will increase the number of active writers.
+	 * Waits until there are no active readers or writers, and then registers the
+	 * current thread as the writer.
 	 */
-	public synchronized void lockReadWrite() {
-		while (readers > 0 || writers > 0) {
-			try {
-				this.wait();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-		}
-		writers++;
-	}
+	public abstract void lockReadWrite();
 
 	/**
-	 * Will decrease the number of active writers, and notify any waiting threads if
-	 * necessary.
+	 * Releases the write lock taken by {@link #lockReadWrite()}.
 	 */
-	public synchronized void unlockReadWrite() {
-		writers--;
-		this.notifyAll();
-	}
+	public abstract void unlockReadWrite();
 }
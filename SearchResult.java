@@ -1,5 +1,7 @@
 public class SearchResult implements Comparable<SearchResult> {
 
+	private final int document;
+	private final DocumentTable documents;
 	private final String location;
 	private int count;
 	private double score;
@@ -13,12 +15,31 @@ public class SearchResult implements Comparable<SearchResult> {
 	 * @param total    the size of the file in which the word is found
 	 */
 	public SearchResult(String location, int count, int total) {
+		this.document = -1;
+		this.documents = null;
 		this.location = location;
 		this.count = count;
 		this.score = (double) count / total;
 		this.total = total;
 	}
 
+	/**
+	 * Initializes a searchResult for a location id. The path of the location is
+	 * only looked up from the document table when it is needed.
+	 * 
+	 * @param document  the id of the file where a word is found
+	 * @param count     how many times a word is seen
+	 * @param documents the table holding the path and size of the file
+	 */
+	public SearchResult(int document, int count, DocumentTable documents) {
+		this.document = document;
+		this.documents = documents;
+		this.location = null;
+		this.count = count;
+		this.total = documents.getTotal(document);
+		this.score = (double) count / total;
+	}
+
 	/**
 	 * Compares search results first by score, then by count, then by location.
 	 * 
@@ -34,7 +55,7 @@ public class SearchResult implements Comparable<SearchResult> {
 			result = Integer.compare(other.count, this.count);
 
 			if (result == 0) {
-				result = this.location.compareTo(other.location);
+				result = this.getLocation().compareTo(other.getLocation());
 			}
 		}
 
@@ -47,9 +68,22 @@ public class SearchResult implements Comparable<SearchResult> {
 	 * @return String of the path
 	 */
 	public String getLocation() {
+		if (this.location == null) {
+			return documents.getPath(document);
+		}
 		return this.location;
 	}
 
+	/**
+	 * returns the location id of a SearchResult, or -1 if it was created from a
+	 * path
+	 * 
+	 * @return int of the location id
+	 */
+	public int getDocument() {
+		return this.document;
+	}
+
 	/**
 	 * returns an int of the count data member for a Search Result
 	 * 
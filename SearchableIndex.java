@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The read side of an inverted index: searching, lookups, counts, and JSON
+ * output. Implemented by the mutable {@link InvertedIndex} and by read-only
+ * snapshots such as {@link FrozenInvertedIndex}, so the query parsers can search
+ * either.
+ */
+public interface SearchableIndex {
+
+	/**
+	 * calls JSON writing methods for outputting the index
+	 *
+	 * @param path the path to the output file location
+	 */
+	public abstract void toJSON(Path path) throws IOException;
+
+	/**
+	 * Outputs the map of locations to sizes in a pretty JSON format
+	 *
+	 * @param path the path to the output file location
+	 */
+	public abstract void outPutLocationMap(Path path) throws IOException;
+
+	/**
+	 * Searches the index for exact matches to the query words.
+	 *
+	 * @param query a set of stemmed query words
+	 * @return a sorted list of SearchResults
+	 */
+	public abstract ArrayList<SearchResult> exactSearch(Collection<String> query);
+
+	/**
+	 * Searches the index for words starting with the query words.
+	 *
+	 * @param query a set of stemmed query words
+	 * @return a sorted list of SearchResults
+	 */
+	public abstract ArrayList<SearchResult> partialSearch(Collection<String> query);
+
+	/**
+	 * Tests whether the index contains the specified word.
+	 *
+	 * @param word word to look for
+	 * @return true if the word is stored in the index
+	 */
+	public abstract boolean contains(String word);
+
+	/**
+	 * Tests whether the index contains a specific word in a specific path
+	 *
+	 * @param word word to look for
+	 * @param path path to look for
+	 * @return true if the path is stored for the word in the index
+	 */
+	public abstract boolean contains(String word, String path);
+
+	/**
+	 * Tests whether the index contains a specific position for a path for a word
+	 *
+	 * @param word     word to look for
+	 * @param path     path to look for
+	 * @param position int to look for
+	 * @return true if the position is stored in the path for a word in the index
+	 */
+	public abstract boolean contains(String word, String path, int position);
+
+	/**
+	 * Tests whether the index contains the specified path.
+	 *
+	 * @param path path to look for
+	 * @return true if the path is stored in the index
+	 */
+	public abstract boolean contains(Path path);
+
+	/**
+	 * Returns the total number of words in the index.
+	 *
+	 * @return number of words in the index
+	 */
+	public abstract int wordCount();
+
+	/**
+	 * Returns the number of paths a word is found in.
+	 *
+	 * @param word word to look for
+	 * @return number of paths for the word
+	 */
+	public abstract int pathCount(String word);
+
+	/**
+	 * Returns the number of positions for a path for a word.
+	 *
+	 * @param word word to look for
+	 * @param path path to look for
+	 * @return number of positions found
+	 */
+	public abstract int positionCount(String word, String path);
+
+	/**
+	 * Returns the number of times a word was found.
+	 *
+	 * @param word word to look for
+	 * @return number of times the word was found
+	 */
+	public abstract int wordCount(String word);
+
+	/**
+	 * Returns the number of distinct words found in a path.
+	 *
+	 * @param path path to look for
+	 * @return number of words with postings in the path
+	 */
+	public abstract int pathCount(Path path);
+
+	/**
+	 * Returns the total number of word occurrences in the index.
+	 *
+	 * @return number of positions stored across all words and locations
+	 */
+	public abstract long tokenCount();
+
+	/**
+	 * Returns the number of words found in a location.
+	 *
+	 * @param path path to look for
+	 * @return number of words in the location
+	 */
+	public abstract int tokenCount(Path path);
+
+	/**
+	 * Returns the number of locations in the index.
+	 *
+	 * @return number of locations
+	 */
+	public abstract int locationCount();
+}
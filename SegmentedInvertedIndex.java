@@ -0,0 +1,1003 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A thread-safe inverted index organized as a set of immutable segments. New
+ * postings are added to a small mutable in-memory segment, which is sealed
+ * into a {@link FrozenInvertedIndex} once it holds enough positions. Searches
+ * fan out over the in-memory segment and every sealed segment, combining their
+ * search results by location. Since every segment resolves location ids with
+ * the same document table, results for the same location share an id.
+ *
+ * Sealed segments are combined in the background with a tiered merge policy:
+ * segments are grouped into tiers by size, each tier {@link #MERGE_FACTOR}
+ * times larger than the one below, and a tier is merged into one segment once
+ * it holds that many segments. Merges read only the immutable segments, so the
+ * lock is only held to swap the merged segment in.
+ *
+ * Writes hold the lock only to add to the in-memory segment. A full in-memory
+ * segment is detached under the lock and replaced with an empty one, and is
+ * sealed after the lock is released; until then searches read it as it is.
+ * The sealed segments and the detached segments are published together in an
+ * immutable {@link View} through a volatile field, so searches take the read
+ * lock only to search the in-memory segment, and search every other segment
+ * after releasing it.
+ *
+ * Each location should be added once, or swapped with
+ * {@link #replace(String, InvertedIndex)}. Positions added to a location that
+ * already has postings in a sealed segment are counted in both segments until
+ * they are merged.
+ */
+public class SegmentedInvertedIndex implements ConcurrentIndex {
+
+	/** The default number of positions the in-memory segment holds before it is sealed. */
+	public static final int DEFAULT_FLUSH = 1 << 18;
+
+	/** The number of segments of one tier that are merged together. */
+	public static final int MERGE_FACTOR = 4;
+
+	/** The location paths and totals shared by every segment. */
+	private final DocumentTable documents;
+
+	/** Guards the document table and the in-memory segment, and serializes changes to the view. */
+	private final ReadWriteLock lock;
+
+	/** The work queue merges run on, or null to merge on the writing thread. */
+	private final WorkQueue queue;
+
+	/** The number of positions the in-memory segment holds before it is sealed. */
+	private final int flushSize;
+
+	/** The mutable in-memory segment new postings are added to. */
+	private InvertedIndex memtable;
+
+	/** The number of positions added to the in-memory segment since it was created. */
+	private long buffered;
+
+	/** The sealed and detached segments; replaced rather than modified, so it can be read without the lock. */
+	private volatile View view;
+
+	/** Held while merging, so only one merge or compaction runs at a time. */
+	private final Object merging;
+
+	/** Whether a merge task is waiting to run on the work queue. */
+	private final AtomicBoolean scheduled;
+
+	/**
+	 * Initializes the index with the default flush size
+	 *
+	 * @param queue the work queue to merge segments with, or null to merge on the
+	 *              writing thread
+	 */
+	public SegmentedInvertedIndex(WorkQueue queue) {
+		this(queue, DEFAULT_FLUSH);
+	}
+
+	/**
+	 * Initializes the index with the specified flush size
+	 *
+	 * @param queue     the work queue to merge segments with, or null to merge on
+	 *                  the writing thread
+	 * @param flushSize the number of positions to buffer before sealing a segment
+	 */
+	public SegmentedInvertedIndex(WorkQueue queue, int flushSize) {
+		this(queue, flushSize, new SimpleReadWriteLock());
+	}
+
+	/**
+	 * Initializes the index with the specified flush size, protected by the
+	 * specified lock
+	 *
+	 * @param queue     the work queue to merge segments with, or null to merge on
+	 *                  the writing thread
+	 * @param flushSize the number of positions to buffer before sealing a segment
+	 * @param lock      the lock guarding the document table and in-memory segment
+	 */
+	public SegmentedInvertedIndex(WorkQueue queue, int flushSize, ReadWriteLock lock) {
+		this.documents = new DocumentTable();
+		this.lock = lock;
+		this.queue = queue;
+		this.flushSize = Math.max(1, flushSize);
+		this.memtable = new InvertedIndex(documents);
+		this.buffered = 0;
+		this.view = new View(List.of(), List.of());
+		this.merging = new Object();
+		this.scheduled = new AtomicBoolean(false);
+	}
+
+	/**
+	 * The sealed segments, and the in-memory segments that were detached to be
+	 * sealed but are not sealed yet. Neither list nor any of its segments is
+	 * modified once published, so a view may be searched without the lock.
+	 */
+	private static class View {
+		private final List<FrozenInvertedIndex> segments;
+		private final List<InvertedIndex> detached;
+
+		public View(List<FrozenInvertedIndex> segments, List<InvertedIndex> detached) {
+			this.segments = Collections.unmodifiableList(segments);
+			this.detached = Collections.unmodifiableList(detached);
+		}
+
+		/**
+		 * Returns a view with another detached in-memory segment.
+		 *
+		 * @param memtable the in-memory segment that was detached
+		 * @return the new view
+		 */
+		public View detach(InvertedIndex memtable) {
+			ArrayList<InvertedIndex> detaching = new ArrayList<>(detached);
+			detaching.add(memtable);
+			return new View(segments, detaching);
+		}
+
+		/**
+		 * Returns a view with a detached in-memory segment swapped for its sealed
+		 * segment.
+		 *
+		 * @param memtable the detached in-memory segment
+		 * @param segment  the segment it was sealed into
+		 * @return the new view
+		 */
+		public View seal(InvertedIndex memtable, FrozenInvertedIndex segment) {
+			ArrayList<InvertedIndex> detaching = new ArrayList<>(detached);
+			detaching.remove(memtable);
+			ArrayList<FrozenInvertedIndex> sealed = new ArrayList<>(segments);
+			if (segment.postingCount() > 0) {
+				sealed.add(segment);
+			}
+			return new View(sealed, detaching);
+		}
+
+		/**
+		 * Returns a view with some segments replaced by the segment they were merged
+		 * into. Segments sealed while merging are kept.
+		 *
+		 * @param merged the segments that were merged
+		 * @param result the segment they were merged into
+		 * @return the new view
+		 */
+		public View replace(List<FrozenInvertedIndex> merged, FrozenInvertedIndex result) {
+			ArrayList<FrozenInvertedIndex> kept = new ArrayList<>(segments.size());
+			for (FrozenInvertedIndex segment : segments) {
+				boolean replaced = false;
+				for (FrozenInvertedIndex old : merged) {
+					if (old == segment) {
+						replaced = true;
+						break;
+					}
+				}
+				if (!replaced) {
+					kept.add(segment);
+				}
+			}
+			if (result.postingCount() > 0) {
+				kept.add(result);
+			}
+			return new View(kept, detached);
+		}
+	}
+
+	/**
+	 * Returns the number of sealed segments.
+	 *
+	 * @return number of segments
+	 */
+	public int size() {
+		return view.segments.size();
+	}
+
+	/**
+	 * Returns the lock guarding the document table and in-memory segment.
+	 *
+	 * @return the locks of the index
+	 */
+	@Override
+	public List<ReadWriteLock> locks() {
+		return List.of(lock);
+	}
+
+	/**
+	 * Detaches the in-memory segment if it holds enough positions, replacing it
+	 * with an empty one. The caller must hold the write lock, and must pass the
+	 * detached segment to {@link #seal(InvertedIndex)} after releasing it.
+	 *
+	 * @param force whether to detach the segment however many positions it holds
+	 * @return the detached segment, or null if it was kept
+	 */
+	private InvertedIndex detach(boolean force) {
+		if (buffered < flushSize && !force || memtable.words().isEmpty()) {
+			return null;
+		}
+		InvertedIndex detached = memtable;
+		view = view.detach(detached);
+		memtable = new InvertedIndex(documents);
+		buffered = 0;
+		return detached;
+	}
+
+	/**
+	 * Seals a detached in-memory segment into an immutable segment without holding
+	 * the lock, then swaps it into the view and schedules a merge. Nothing is
+	 * added to a detached segment, so it can be read while it is sealed.
+	 *
+	 * @param detached the segment returned by {@link #detach(boolean)}, or null
+	 */
+	private void seal(InvertedIndex detached) {
+		if (detached == null) {
+			return;
+		}
+		FrozenInvertedIndex segment = new FrozenInvertedIndex(detached.words(), documents, true);
+		lock.lockReadWrite();
+		try {
+			view = view.seal(detached, segment);
+		} finally {
+			lock.unlockReadWrite();
+		}
+		scheduleMerge();
+	}
+
+	/**
+	 * Merges full tiers on the work queue, or on the calling thread if there is no
+	 * work queue. Does nothing if a merge is already waiting to run.
+	 */
+	private void scheduleMerge() {
+		if (queue == null) {
+			mergeTiers();
+		} else if (scheduled.compareAndSet(false, true)) {
+			queue.executeOrRun(() -> {
+				scheduled.set(false);
+				mergeTiers();
+			});
+		}
+	}
+
+	/**
+	 * Returns the tier of a segment, which grows by one each time the segment size
+	 * grows by {@link #MERGE_FACTOR}.
+	 *
+	 * @param segment the segment
+	 * @return the tier of the segment
+	 */
+	private int tier(FrozenInvertedIndex segment) {
+		int tier = 0;
+		long limit = (long) flushSize * MERGE_FACTOR;
+		while (segment.tokenCount() >= limit) {
+			tier++;
+			limit *= MERGE_FACTOR;
+		}
+		return tier;
+	}
+
+	/**
+	 * Merges the segments of the lowest full tier until no tier is full. The
+	 * segments are merged without holding the lock.
+	 */
+	private void mergeTiers() {
+		synchronized (merging) {
+			while (true) {
+				List<FrozenInvertedIndex> current;
+				BitSet removed;
+				lock.lockReadOnly();
+				try {
+					current = view.segments;
+					removed = documents.pending();
+				} finally {
+					lock.unlockReadOnly();
+				}
+
+				HashMap<Integer, ArrayList<FrozenInvertedIndex>> tiers = new HashMap<>();
+				ArrayList<FrozenInvertedIndex> full = null;
+				for (FrozenInvertedIndex segment : current) {
+					int tier = tier(segment);
+					tiers.putIfAbsent(tier, new ArrayList<>());
+					tiers.get(tier).add(segment);
+				}
+				int lowest = Integer.MAX_VALUE;
+				for (var tier : tiers.entrySet()) {
+					if (tier.getValue().size() >= MERGE_FACTOR && tier.getKey() < lowest) {
+						lowest = tier.getKey();
+						full = tier.getValue();
+					}
+				}
+				if (full == null) {
+					return;
+				}
+
+				FrozenInvertedIndex merged = FrozenInvertedIndex.merge(full, removed, documents);
+
+				lock.lockReadWrite();
+				try {
+					view = view.replace(full, merged);
+				} finally {
+					lock.unlockReadWrite();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Freezes the in-memory segment and every detached segment into snapshots that
+	 * share the document table, after the sealed segments of a view. The caller
+	 * must hold the read lock.
+	 *
+	 * @param current the view to take the sealed and detached segments from
+	 * @return every segment of the index as a snapshot
+	 */
+	private ArrayList<FrozenInvertedIndex> snapshots(View current) {
+		ArrayList<FrozenInvertedIndex> all = new ArrayList<>(current.segments);
+		for (InvertedIndex detached : current.detached) {
+			all.add(new FrozenInvertedIndex(detached.words(), documents, true));
+		}
+		all.add(new FrozenInvertedIndex(memtable.words(), documents, true));
+		return all;
+	}
+
+	/**
+	 * Merges every segment into one snapshot that shares the document table. The
+	 * caller must hold the read lock.
+	 *
+	 * @return a snapshot of every live posting
+	 */
+	private FrozenInvertedIndex all() {
+		return FrozenInvertedIndex.merge(snapshots(view), documents.pending(), documents);
+	}
+
+	/**
+	 * calls JSON writing methods for outputting InvertedIndex
+	 *
+	 * @param path the path to the output file location
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			all().toJSON(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * calls JSON writing methods for outputting LocationMap
+	 *
+	 * @param path the path to the output file location
+	 */
+	@Override
+	public void outPutLocationMap(Path path) throws IOException {
+		lock.lockReadOnly();
+		try {
+			memtable.outPutLocationMap(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * adds the words of a local index to the in-memory segment, sealing it if it
+	 * has grown large enough.
+	 *
+	 * @param localIndex an InvertedIndex of words, paths, and locations
+	 */
+	@Override
+	public void addAll(InvertedIndex localIndex) throws IOException {
+		long tokens = localIndex.tokenCount();
+		InvertedIndex detached;
+		lock.lockReadWrite();
+		try {
+			memtable.addAll(localIndex);
+			buffered += tokens;
+			detached = detach(false);
+		} finally {
+			lock.unlockReadWrite();
+		}
+		seal(detached);
+	}
+
+	/**
+	 * merges another index into the in-memory segment, sealing it if it has grown
+	 * large enough.
+	 *
+	 * @param other an InvertedIndex of words, paths, and locations
+	 */
+	@Override
+	public void merge(InvertedIndex other) {
+		long tokens = other.tokenCount();
+		InvertedIndex detached;
+		lock.lockReadWrite();
+		try {
+			memtable.merge(other);
+			buffered += tokens;
+			detached = detach(false);
+		} finally {
+			lock.unlockReadWrite();
+		}
+		seal(detached);
+	}
+
+	/**
+	 * adds every word of a location to the in-memory segment, sealing it if it has
+	 * grown large enough.
+	 *
+	 * @param location      the file path for where the words were found
+	 * @param termPositions map of stemmed words to their positions in the location
+	 * @param totalWords    the number of words in the location
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> termPositions, int totalWords) {
+		long tokens = 0;
+		for (PositionList positions : termPositions.values()) {
+			tokens += positions.size();
+		}
+		InvertedIndex detached;
+		lock.lockReadWrite();
+		try {
+			memtable.addDocument(location, termPositions, totalWords);
+			buffered += tokens;
+			detached = detach(false);
+		} finally {
+			lock.unlockReadWrite();
+		}
+		seal(detached);
+	}
+
+	/**
+	 * adds word, locations, and positions to the in-memory segment. The words of a
+	 * location should be added before the segment is sealed, since the number of
+	 * words of a location is counted per segment.
+	 *
+	 * @param stemmedWord a stemmed and parsed word to be added to the index
+	 * @param inputFile   the file path for where a word was found
+	 * @param position    the position of the word when it was found in a file
+	 */
+	@Override
+	public void add(String stemmedWord, String inputFile, int position) {
+		lock.lockReadWrite();
+		try {
+			memtable.add(stemmedWord, inputFile, position);
+			buffered++;
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * removes locations by marking them with tombstones in the shared document
+	 * table. Their postings are skipped by searches and left out of later merges.
+	 *
+	 * @param locations the location paths to remove
+	 * @return the number of locations that were in the index
+	 */
+	@Override
+	public int removeAll(Collection<String> locations) {
+		lock.lockReadWrite();
+		try {
+			return memtable.removeAll(locations);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * replaces a location with the contents of a local index under a single write
+	 * lock, so searches see either the old or the new postings.
+	 *
+	 * @param location   the location path to replace
+	 * @param localIndex an InvertedIndex of the new words and positions of the
+	 *                   location
+	 */
+	@Override
+	public void replace(String location, InvertedIndex localIndex) throws IOException {
+		long tokens = localIndex.tokenCount();
+		InvertedIndex detached;
+		lock.lockReadWrite();
+		try {
+			memtable.removeAll(List.of(location));
+			memtable.addAll(localIndex);
+			buffered += tokens;
+			detached = detach(false);
+		} finally {
+			lock.unlockReadWrite();
+		}
+		seal(detached);
+	}
+
+	/**
+	 * purges the postings of every removed location by merging every sealed
+	 * segment into one without them. The segments are merged without holding the
+	 * lock; the in-memory segment is purged when the merged segment is swapped in.
+	 * The removed locations stay pending if a segment was being sealed meanwhile,
+	 * since it may have been frozen before they were removed.
+	 */
+	@Override
+	public void compact() {
+		synchronized (merging) {
+			View current;
+			BitSet removed;
+			lock.lockReadOnly();
+			try {
+				current = view;
+				removed = documents.pending();
+			} finally {
+				lock.unlockReadOnly();
+			}
+			if (removed.isEmpty()) {
+				return;
+			}
+
+			FrozenInvertedIndex merged = FrozenInvertedIndex.merge(current.segments, removed, documents);
+
+			lock.lockReadWrite();
+			try {
+				boolean sealing = !current.detached.isEmpty() || !view.detached.isEmpty()
+						|| view.segments.size() != current.segments.size();
+				view = view.replace(current.segments, merged);
+				memtable.purgeWords(removed, "", Integer.MAX_VALUE);
+				if (!sealing) {
+					documents.purged(removed);
+				}
+			} finally {
+				lock.unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * Purges removed locations on a work queue, without waiting for it to finish.
+	 *
+	 * @param queue the work queue to compact with
+	 */
+	@Override
+	public void compact(WorkQueue queue) {
+		queue.executeOrRun(this::compact);
+	}
+
+	/**
+	 * Seals the in-memory segment, so every posting is stored compressed in an
+	 * immutable segment.
+	 */
+	@Override
+	public void compress() {
+		InvertedIndex detached;
+		lock.lockReadWrite();
+		try {
+			detached = detach(true);
+		} finally {
+			lock.unlockReadWrite();
+		}
+		seal(detached);
+	}
+
+	/**
+	 * Builds an immutable snapshot of every segment that can be searched without
+	 * locking. The in-memory and detached segments are frozen and the document
+	 * table is compacted under the read lock; the segments are then merged and
+	 * their location ids renumbered to the compacted table in one pass.
+	 *
+	 * @return a frozen copy of the index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		ArrayList<FrozenInvertedIndex> all;
+		BitSet removed;
+		int[] remap;
+		DocumentTable compacted;
+		lock.lockReadOnly();
+		try {
+			all = snapshots(view);
+			removed = documents.pending();
+			remap = new int[documents.size()];
+			compacted = documents.compact(remap);
+		} finally {
+			lock.unlockReadOnly();
+		}
+		return FrozenInvertedIndex.merge(all, removed, documents).renumber(remap, compacted);
+	}
+
+	/**
+	 * Tests whether the index contains the specified word.
+	 *
+	 * @param word word to look for
+	 *
+	 * @return true if the word is stored in the index
+	 */
+	@Override
+	public boolean contains(String word) {
+		View current;
+		lock.lockReadOnly();
+		try {
+			if (memtable.contains(word)) {
+				return true;
+			}
+			current = view;
+		} finally {
+			lock.unlockReadOnly();
+		}
+
+		for (InvertedIndex detached : current.detached) {
+			if (detached.contains(word)) {
+				return true;
+			}
+		}
+		for (FrozenInvertedIndex segment : current.segments) {
+			if (segment.liveLocations(word) > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Searches every segment for exact matches to the Query of words passed in and
+	 * generates a list of matches. Only the in-memory segment is searched under
+	 * the read lock.
+	 *
+	 * @param query a string set of query lines from all query files.
+	 *
+	 * @return a sorted map of SearchResults
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		View current;
+		lock.lockReadOnly();
+		try {
+			current = view;
+			for (String queryWord : query) {
+				memtable.exactSearch(queryWord, lookup, searchResults);
+			}
+		} finally {
+			lock.unlockReadOnly();
+		}
+
+		for (String queryWord : query) {
+			for (InvertedIndex detached : current.detached) {
+				detached.exactSearch(queryWord, lookup, searchResults);
+			}
+			for (FrozenInvertedIndex segment : current.segments) {
+				segment.exactSearch(queryWord, lookup, searchResults);
+			}
+		}
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	/**
+	 * Searches every segment for partial matches to the Query of words passed in
+	 * and generates a list of matches. Only the in-memory segment is searched under
+	 * the read lock.
+	 *
+	 * @param query a string set of query lines from all query files.
+	 *
+	 * @return a sorted map of SearchResults
+	 */
+	@Override
+	public ArrayList<SearchResult> partialSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		View current;
+		lock.lockReadOnly();
+		try {
+			current = view;
+			for (String queryWord : query) {
+				memtable.partialSearch(queryWord, lookup, searchResults);
+			}
+		} finally {
+			lock.unlockReadOnly();
+		}
+
+		for (String queryWord : query) {
+			for (InvertedIndex detached : current.detached) {
+				detached.partialSearch(queryWord, lookup, searchResults);
+			}
+			for (FrozenInvertedIndex segment : current.segments) {
+				segment.partialSearch(queryWord, lookup, searchResults);
+			}
+		}
+		Collections.sort(searchResults);
+		return searchResults;
+	}
+
+	/**
+	 * Tests whether the index contains a specific word and if that word contains a
+	 * specific path
+	 *
+	 * @param word word to look for
+	 * @param path path to look for
+	 *
+	 * @return true if the path is stored in the index
+	 */
+	@Override
+	public boolean contains(String word, String path) {
+		lock.lockReadOnly();
+		try {
+			View current = view;
+			if (memtable.contains(word, path)) {
+				return true;
+			}
+			for (InvertedIndex detached : current.detached) {
+				if (detached.contains(word, path)) {
+					return true;
+				}
+			}
+			for (FrozenInvertedIndex segment : current.segments) {
+				if (segment.contains(word, path)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Tests whether the index contains a specific position for a path for a word
+	 *
+	 * @param word     word to look for
+	 * @param path     path to look for
+	 * @param position int to look for
+	 *
+	 * @return true if the position is stored in the path for a word in the index
+	 */
+	@Override
+	public boolean contains(String word, String path, int position) {
+		lock.lockReadOnly();
+		try {
+			View current = view;
+			if (memtable.contains(word, path, position)) {
+				return true;
+			}
+			for (InvertedIndex detached : current.detached) {
+				if (detached.contains(word, path, position)) {
+					return true;
+				}
+			}
+			for (FrozenInvertedIndex segment : current.segments) {
+				if (segment.contains(word, path, position)) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Tests whether the index contains the specified path.
+	 *
+	 * @param path word to look for
+	 *
+	 * @return true if the path is stored in the index
+	 */
+	@Override
+	public boolean contains(Path path) {
+		lock.lockReadOnly();
+		try {
+			return memtable.contains(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the total number of words in the inverted index. Words found in
+	 * more than one segment are counted once.
+	 *
+	 * @return int number of words in the index
+	 */
+	@Override
+	public int wordCount() {
+		lock.lockReadOnly();
+		try {
+			View current = view;
+			if (current.segments.isEmpty() && current.detached.isEmpty()) {
+				return memtable.wordCount();
+			}
+			if (current.segments.size() == 1 && current.detached.isEmpty() && memtable.words().isEmpty()
+					&& !documents.hasPending()) {
+				return current.segments.get(0).wordCount();
+			}
+
+			HashSet<String> words = new HashSet<>();
+			for (FrozenInvertedIndex segment : current.segments) {
+				segment.liveWords(words);
+			}
+			ArrayList<InvertedIndex> buffers = new ArrayList<>(current.detached);
+			buffers.add(memtable);
+			for (InvertedIndex buffer : buffers) {
+				for (String word : buffer.words().keySet()) {
+					if (buffer.contains(word)) {
+						words.add(word);
+					}
+				}
+			}
+			return words.size();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the total number of paths for a word in the inverted index.
+	 *
+	 * @param word word to look for
+	 *
+	 * @return int number of words in the index
+	 */
+	@Override
+	public int pathCount(String word) {
+		View current;
+		int count;
+		lock.lockReadOnly();
+		try {
+			current = view;
+			count = memtable.pathCount(word);
+		} finally {
+			lock.unlockReadOnly();
+		}
+
+		for (InvertedIndex detached : current.detached) {
+			count += detached.pathCount(word);
+		}
+		for (FrozenInvertedIndex segment : current.segments) {
+			count += segment.liveLocations(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the total number of numbers for a path for a word in the inverted
+	 * index.
+	 *
+	 * @param word word to look for
+	 * @param path path to look for
+	 *
+	 * @return int number of numbers found
+	 */
+	@Override
+	public int positionCount(String word, String path) {
+		lock.lockReadOnly();
+		try {
+			View current = view;
+			int count = memtable.positionCount(word, path);
+			for (InvertedIndex detached : current.detached) {
+				count += detached.positionCount(word, path);
+			}
+			for (FrozenInvertedIndex segment : current.segments) {
+				count += segment.positionCount(word, path);
+			}
+			return count;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of times a word was found (i.e. the number of positions
+	 * associated with a word in the index).
+	 *
+	 * @param word word to look for
+	 *
+	 * @return number of times the word was found
+	 */
+	@Override
+	public int wordCount(String word) {
+		View current;
+		int count;
+		lock.lockReadOnly();
+		try {
+			current = view;
+			count = memtable.wordCount(word);
+		} finally {
+			lock.unlockReadOnly();
+		}
+
+		for (InvertedIndex detached : current.detached) {
+			count += detached.wordCount(word);
+		}
+		for (FrozenInvertedIndex segment : current.segments) {
+			count += segment.liveOccurrences(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the total number of word occurrences in the inverted index.
+	 *
+	 * @return number of positions stored across all words and locations
+	 */
+	@Override
+	public long tokenCount() {
+		lock.lockReadOnly();
+		try {
+			View current = view;
+			long count = memtable.tokenCount();
+			for (InvertedIndex detached : current.detached) {
+				count += detached.tokenCount();
+			}
+			for (FrozenInvertedIndex segment : current.segments) {
+				count += segment.liveTokens();
+			}
+			return count;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of words found in a location.
+	 *
+	 * @param path path to look for
+	 *
+	 * @return number of words in the location, or 0 if the location is not stored
+	 */
+	@Override
+	public int tokenCount(Path path) {
+		lock.lockReadOnly();
+		try {
+			return memtable.tokenCount(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of locations in the inverted index.
+	 *
+	 * @return number of locations
+	 */
+	@Override
+	public int locationCount() {
+		lock.lockReadOnly();
+		try {
+			return memtable.locationCount();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of times a path was found (i.e. the number of positions
+	 * associated with a path in the index).
+	 *
+	 * @param path path to look for
+	 *
+	 * @return number of times the path was found
+	 */
+	@Override
+	public int pathCount(Path path) {
+		lock.lockReadOnly();
+		try {
+			return memtable.pathCount(path);
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns a string representation of the InvertedIndex
+	 */
+	@Override
+	public String toString() {
+		lock.lockReadOnly();
+		try {
+			return all().toString();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+}
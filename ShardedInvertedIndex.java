@@ -0,0 +1,805 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe inverted index that partitions its words across a number of
+ * independently locked shards by word hash, so merges of different files can
+ * proceed concurrently. Each shard keeps its words sorted, so partial searches
+ * scan the matching prefix of every shard. The document table is shared by all
+ * shards and protected by its own lock.
+ */
+public class ShardedInvertedIndex implements ConcurrentIndex {
+
+	/** The default number of shards to use when not specified. */
+	public static final int DEFAULT = 16;
+
+	private final InvertedIndex[] shards;
+	private final ReadWriteLock[] locks;
+	private final DocumentTable documents;
+	private final ReadWriteLock documentLock;
+
+	/**
+	 * Initializes the index with the default number of shards
+	 */
+	public ShardedInvertedIndex() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * Initializes the index with the specified number of shards
+	 *
+	 * @param count number of shards; should be at least 1
+	 */
+	public ShardedInvertedIndex(int count) {
+		this(count, SimpleReadWriteLock::new);
+	}
+
+	/**
+	 * Initializes the index with the specified number of shards, each guarded by a
+	 * lock from the supplier
+	 *
+	 * @param count number of shards; should be at least 1
+	 * @param locks supplies the lock of each shard and of the document table
+	 */
+	public ShardedInvertedIndex(int count, Supplier<? extends ReadWriteLock> locks) {
+		documents = new DocumentTable();
+		documentLock = locks.get();
+		shards = new InvertedIndex[Math.max(1, count)];
+		this.locks = new ReadWriteLock[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new InvertedIndex(documents);
+			this.locks[i] = locks.get();
+		}
+	}
+
+	/**
+	 * Returns the shard a word is stored in.
+	 *
+	 * @param word the word to look for
+	 * @return the index of the shard
+	 */
+	private int shard(String word) {
+		return Math.floorMod(word.hashCode(), shards.length);
+	}
+
+	/**
+	 * Returns the number of shards used by the index.
+	 *
+	 * @return number of shards
+	 */
+	public int size() {
+		return shards.length;
+	}
+
+	/**
+	 * Returns the lock of the document table followed by the lock of each shard.
+	 *
+	 * @return the locks of the index
+	 */
+	@Override
+	public List<ReadWriteLock> locks() {
+		ArrayList<ReadWriteLock> all = new ArrayList<>(locks.length + 1);
+		all.add(documentLock);
+		all.addAll(Arrays.asList(locks));
+		return all;
+	}
+
+	/**
+	 * Merges the words of every shard into one sorted map. The caller must hold the
+	 * read lock of every shard.
+	 *
+	 * @return a sorted map of every word in the index
+	 */
+	private TreeMap<String, TreeMap<Integer, PositionList>> merged() {
+		TreeMap<String, TreeMap<Integer, PositionList>> merged = new TreeMap<>();
+		for (InvertedIndex shard : shards) {
+			merged.putAll(shard.words());
+		}
+		return merged;
+	}
+
+	/**
+	 * Acquires the document lock and the read lock of every shard, in order.
+	 */
+	private void lockAllReadOnly() {
+		documentLock.lockReadOnly();
+		for (ReadWriteLock lock : locks) {
+			lock.lockReadOnly();
+		}
+	}
+
+	/**
+	 * Releases the locks acquired by {@link #lockAllReadOnly()}.
+	 */
+	private void unlockAllReadOnly() {
+		for (ReadWriteLock lock : locks) {
+			lock.unlockReadOnly();
+		}
+		documentLock.unlockReadOnly();
+	}
+
+	/**
+	 * calls JSON writing methods for outputting InvertedIndex
+	 *
+	 * @param path the path to the output file location
+	 */
+	@Override
+	public void toJSON(Path path) throws IOException {
+		lockAllReadOnly();
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			JSONWriter.asDoubleNested(merged(), documents, writer, 0);
+		} finally {
+			unlockAllReadOnly();
+		}
+	}
+
+	/**
+	 * calls JSON writing methods for outputting LocationMap
+	 *
+	 * @param path the path to the output file location
+	 */
+	@Override
+	public void outPutLocationMap(Path path) throws IOException {
+		documentLock.lockReadOnly();
+		try {
+			shards[0].outPutLocationMap(path);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * adds the words of a local index to the shards they belong to. The locations
+	 * are registered first under the document lock, then each shard is merged under
+	 * its own write lock, so merges touching different shards do not wait on each
+	 * other.
+	 *
+	 * @param localIndex an InvertedIndex of words, paths, and locations
+	 */
+	@Override
+	public void addAll(InvertedIndex localIndex) throws IOException {
+		int[] remap;
+		documentLock.lockReadWrite();
+		try {
+			remap = shards[0].addDocuments(localIndex);
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+
+		ArrayList<ArrayList<String>> partitions = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			partitions.add(new ArrayList<>());
+		}
+		for (String word : localIndex.words().keySet()) {
+			partitions.get(shard(word)).add(word);
+		}
+
+		int[] newTerms = new int[remap.length];
+		int start = ThreadLocalRandom.current().nextInt(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			int shard = (start + i) % shards.length;
+			if (partitions.get(shard).isEmpty()) {
+				continue;
+			}
+			locks[shard].lockReadWrite();
+			try {
+				shards[shard].addWords(localIndex, partitions.get(shard), remap, newTerms);
+			} finally {
+				locks[shard].unlockReadWrite();
+			}
+		}
+
+		documentLock.lockReadWrite();
+		try {
+			shards[0].addTerms(remap, newTerms);
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * merges another index into the shards by splitting its sorted words into one
+	 * sorted run per shard, then walking each run alongside its shard.
+	 *
+	 * @param other an InvertedIndex of words, paths, and locations
+	 */
+	@Override
+	public void merge(InvertedIndex other) {
+		int[] remap;
+		documentLock.lockReadWrite();
+		try {
+			remap = shards[0].addDocuments(other);
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+
+		ArrayList<ArrayList<Map.Entry<String, TreeMap<Integer, PositionList>>>> runs = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			runs.add(new ArrayList<>());
+		}
+		for (var entry : other.words().entrySet()) {
+			runs.get(shard(entry.getKey())).add(entry);
+		}
+
+		int[] newTerms = new int[remap.length];
+		for (int shard = 0; shard < shards.length; shard++) {
+			if (runs.get(shard).isEmpty()) {
+				continue;
+			}
+			locks[shard].lockReadWrite();
+			try {
+				shards[shard].mergeWords(runs.get(shard).iterator(), remap, newTerms);
+			} finally {
+				locks[shard].unlockReadWrite();
+			}
+		}
+
+		documentLock.lockReadWrite();
+		try {
+			shards[0].addTerms(remap, newTerms);
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * adds every word of a location to the shards they belong to. The location is
+	 * registered under the document lock, then each shard is added to under its own
+	 * write lock, once per location rather than once per position.
+	 *
+	 * @param location      the file path for where the words were found
+	 * @param termPositions map of stemmed words to their positions in the location
+	 * @param totalWords    the number of words in the location
+	 */
+	@Override
+	public void addDocument(String location, Map<String, PositionList> termPositions, int totalWords) {
+		if (termPositions.isEmpty()) {
+			return;
+		}
+
+		int document;
+		documentLock.lockReadWrite();
+		try {
+			document = documents.add(location);
+			documents.setTotal(document, Math.max(documents.getTotal(document), totalWords));
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+
+		ArrayList<ArrayList<Map.Entry<String, PositionList>>> partitions = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			partitions.add(new ArrayList<>());
+		}
+		for (Map.Entry<String, PositionList> term : termPositions.entrySet()) {
+			partitions.get(shard(term.getKey())).add(term);
+		}
+
+		int newTerms = 0;
+		int start = ThreadLocalRandom.current().nextInt(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			int shard = (start + i) % shards.length;
+			if (partitions.get(shard).isEmpty()) {
+				continue;
+			}
+			locks[shard].lockReadWrite();
+			try {
+				newTerms += shards[shard].addPostings(document, partitions.get(shard));
+			} finally {
+				locks[shard].unlockReadWrite();
+			}
+		}
+
+		documentLock.lockReadWrite();
+		try {
+			documents.addTerms(document, newTerms);
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * adds word, locations, and positions to the shard the word belongs to
+	 *
+	 * @param stemmedWord a stemmed and parsed word to be added to the index
+	 * @param inputFile   the file path for where a word was found
+	 * @param position    the position of the word when it was found in a file
+	 */
+	@Override
+	public void add(String stemmedWord, String inputFile, int position) {
+		int document;
+		documentLock.lockReadWrite();
+		try {
+			document = documents.add(inputFile);
+			documents.setTotal(document, Math.max(documents.getTotal(document), position));
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+
+		int shard = shard(stemmedWord);
+		boolean newLocation;
+		locks[shard].lockReadWrite();
+		try {
+			newLocation = shards[shard].addPosition(stemmedWord, document, position);
+		} finally {
+			locks[shard].unlockReadWrite();
+		}
+
+		if (newLocation) {
+			documentLock.lockReadWrite();
+			try {
+				documents.addTerms(document, 1);
+			} finally {
+				documentLock.unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * removes locations by marking them with tombstones in the shared document
+	 * table. No shard is locked.
+	 *
+	 * @param locations the location paths to remove
+	 * @return the number of locations that were in the index
+	 */
+	@Override
+	public int removeAll(Collection<String> locations) {
+		documentLock.lockReadWrite();
+		try {
+			return shards[0].removeAll(locations);
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * replaces a location with the contents of a local index. The old postings are
+	 * marked removed before the new ones are added, so a search in between finds
+	 * neither.
+	 *
+	 * @param location   the location path to replace
+	 * @param localIndex an InvertedIndex of the new words and positions of the
+	 *                   location
+	 */
+	@Override
+	public void replace(String location, InvertedIndex localIndex) throws IOException {
+		removeAll(List.of(location));
+		addAll(localIndex);
+	}
+
+	/**
+	 * purges the postings of every removed location from each shard in turn, in
+	 * batches of words, so only one shard is write locked at a time and only
+	 * briefly.
+	 */
+	@Override
+	public void compact() {
+		BitSet removed;
+		documentLock.lockReadOnly();
+		try {
+			removed = documents.pending();
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		if (removed.isEmpty()) {
+			return;
+		}
+
+		for (int i = 0; i < shards.length; i++) {
+			String next = "";
+			while (next != null) {
+				locks[i].lockReadWrite();
+				try {
+					next = shards[i].purgeWords(removed, next, InvertedIndex.PURGE_BATCH);
+				} finally {
+					locks[i].unlockReadWrite();
+				}
+			}
+		}
+
+		documentLock.lockReadWrite();
+		try {
+			documents.purged(removed);
+		} finally {
+			documentLock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Purges removed locations on a work queue, without waiting for it to finish.
+	 *
+	 * @param queue the work queue to compact with
+	 */
+	@Override
+	public void compact(WorkQueue queue) {
+		queue.executeOrRun(this::compact);
+	}
+
+	/**
+	 * Compresses the position lists of every shard.
+	 */
+	@Override
+	public void compress() {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].lockReadWrite();
+			try {
+				shards[i].compress();
+			} finally {
+				locks[i].unlockReadWrite();
+			}
+		}
+	}
+
+	/**
+	 * Builds an immutable snapshot of every shard that can be searched without
+	 * locking.
+	 *
+	 * @return a frozen copy of the index
+	 */
+	@Override
+	public FrozenInvertedIndex freeze() {
+		lockAllReadOnly();
+		try {
+			return new FrozenInvertedIndex(merged(), documents);
+		} finally {
+			unlockAllReadOnly();
+		}
+	}
+
+	/**
+	 * Tests whether the index contains the specified word.
+	 *
+	 * @param word word to look for
+	 *
+	 * @return true if the word is stored in the index
+	 */
+	@Override
+	public boolean contains(String word) {
+		int shard = shard(word);
+		documentLock.lockReadOnly();
+		locks[shard].lockReadOnly();
+		try {
+			return shards[shard].contains(word);
+		} finally {
+			locks[shard].unlockReadOnly();
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Searches every shard for exact matches to the Query of words passed in and
+	 * generates a list of matches.
+	 *
+	 * @param query a string set of query lines from all query files.
+	 *
+	 * @return a sorted map of SearchResults
+	 */
+	@Override
+	public ArrayList<SearchResult> exactSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		documentLock.lockReadOnly();
+		try {
+			for (String queryWord : query) {
+				int shard = shard(queryWord);
+				locks[shard].lockReadOnly();
+				try {
+					shards[shard].exactSearch(queryWord, lookup, searchResults);
+				} finally {
+					locks[shard].unlockReadOnly();
+				}
+			}
+			Collections.sort(searchResults);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return searchResults;
+	}
+
+	/**
+	 * Searches every shard for partial matches to the Query of words passed in and
+	 * generates a list of matches.
+	 *
+	 * @param query a string set of query lines from all query files.
+	 *
+	 * @return a sorted map of SearchResults
+	 */
+	@Override
+	public ArrayList<SearchResult> partialSearch(Collection<String> query) {
+		ArrayList<SearchResult> searchResults = new ArrayList<>();
+		HashMap<Integer, SearchResult> lookup = new HashMap<>();
+
+		documentLock.lockReadOnly();
+		try {
+			for (String queryWord : query) {
+				for (int shard = 0; shard < shards.length; shard++) {
+					locks[shard].lockReadOnly();
+					try {
+						shards[shard].partialSearch(queryWord, lookup, searchResults);
+					} finally {
+						locks[shard].unlockReadOnly();
+					}
+				}
+			}
+			Collections.sort(searchResults);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return searchResults;
+	}
+
+	/**
+	 * Tests whether the index contains a specific word and if that word contains a
+	 * specific path
+	 *
+	 * @param word word to look for
+	 * @param path path to look for
+	 *
+	 * @return true if the path is stored in the index
+	 */
+	@Override
+	public boolean contains(String word, String path) {
+		int shard = shard(word);
+		documentLock.lockReadOnly();
+		locks[shard].lockReadOnly();
+		try {
+			return shards[shard].contains(word, path);
+		} finally {
+			locks[shard].unlockReadOnly();
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Tests whether the index contains a specific position for a path for a word
+	 *
+	 * @param word     word to look for
+	 * @param path     path to look for
+	 * @param position int to look for
+	 *
+	 * @return true if the position is stored in the path for a word in the index
+	 */
+	@Override
+	public boolean contains(String word, String path, int position) {
+		int shard = shard(word);
+		documentLock.lockReadOnly();
+		locks[shard].lockReadOnly();
+		try {
+			return shards[shard].contains(word, path, position);
+		} finally {
+			locks[shard].unlockReadOnly();
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Tests whether the index contains the specified path. Location queries only
+	 * read the shared document table.
+	 *
+	 * @param path word to look for
+	 *
+	 * @return true if the path is stored in the index
+	 */
+	@Override
+	public boolean contains(Path path) {
+		documentLock.lockReadOnly();
+		try {
+			return shards[0].contains(path);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the total number of words in the inverted index.
+	 *
+	 * @return int number of words in the index
+	 */
+	@Override
+	public int wordCount() {
+		int count = 0;
+		documentLock.lockReadOnly();
+		try {
+			boolean optimistic = !documents.hasPending();
+			for (int i = 0; i < shards.length; i++) {
+				OptimisticReadWriteLock stamped = optimistic && locks[i] instanceof OptimisticReadWriteLock
+						? (OptimisticReadWriteLock) locks[i]
+						: null;
+				long stamp = stamped != null ? stamped.tryOptimisticRead() : 0;
+				if (stamp != 0) {
+					int result = shards[i].words().size();
+					if (stamped.validate(stamp)) {
+						count += result;
+						continue;
+					}
+				}
+
+				locks[i].lockReadOnly();
+				try {
+					count += shards[i].wordCount();
+				} finally {
+					locks[i].unlockReadOnly();
+				}
+			}
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the total number of paths for a word in the inverted index.
+	 *
+	 * @param word word to look for
+	 *
+	 * @return int number of words in the index
+	 */
+	@Override
+	public int pathCount(String word) {
+		int shard = shard(word);
+		documentLock.lockReadOnly();
+		locks[shard].lockReadOnly();
+		try {
+			return shards[shard].pathCount(word);
+		} finally {
+			locks[shard].unlockReadOnly();
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the total number of numbers for a path for a word in the inverted
+	 * index.
+	 *
+	 * @param word word to look for
+	 * @param path path to look for
+	 *
+	 * @return int number of numbers found
+	 */
+	@Override
+	public int positionCount(String word, String path) {
+		int shard = shard(word);
+		documentLock.lockReadOnly();
+		locks[shard].lockReadOnly();
+		try {
+			return shards[shard].positionCount(word, path);
+		} finally {
+			locks[shard].unlockReadOnly();
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of times a word was found (i.e. the number of positions
+	 * associated with a word in the index).
+	 *
+	 * @param word word to look for
+	 *
+	 * @return number of times the word was found
+	 */
+	@Override
+	public int wordCount(String word) {
+		int shard = shard(word);
+		documentLock.lockReadOnly();
+		locks[shard].lockReadOnly();
+		try {
+			return shards[shard].wordCount(word);
+		} finally {
+			locks[shard].unlockReadOnly();
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the total number of word occurrences in the inverted index.
+	 *
+	 * @return number of positions stored across all words and locations
+	 */
+	@Override
+	public long tokenCount() {
+		long count = 0;
+		documentLock.lockReadOnly();
+		try {
+			for (int i = 0; i < shards.length; i++) {
+				locks[i].lockReadOnly();
+				try {
+					count += shards[i].tokenCount();
+				} finally {
+					locks[i].unlockReadOnly();
+				}
+			}
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of words found in a location.
+	 *
+	 * @param path path to look for
+	 *
+	 * @return number of words in the location, or 0 if the location is not stored
+	 */
+	@Override
+	public int tokenCount(Path path) {
+		documentLock.lockReadOnly();
+		try {
+			return shards[0].tokenCount(path);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of locations in the inverted index.
+	 *
+	 * @return number of locations
+	 */
+	@Override
+	public int locationCount() {
+		documentLock.lockReadOnly();
+		try {
+			return shards[0].locationCount();
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of times a path was found (i.e. the number of positions
+	 * associated with a path in the index).
+	 *
+	 * @param path path to look for
+	 *
+	 * @return number of times the path was found
+	 */
+	@Override
+	public int pathCount(Path path) {
+		documentLock.lockReadOnly();
+		try {
+			return shards[0].pathCount(path);
+		} finally {
+			documentLock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns a string representation of the InvertedIndex
+	 */
+	@Override
+	public String toString() {
+		lockAllReadOnly();
+		try {
+			TreeMap<String, TreeMap<String, PositionList>> resolved = new TreeMap<>();
+			for (var word : merged().entrySet()) {
+				TreeMap<String, PositionList> locations = new TreeMap<>();
+				for (var entry : word.getValue().entrySet()) {
+					if (!documents.isRemoved(entry.getKey())) {
+						locations.put(documents.getPath(entry.getKey()), entry.getValue());
+					}
+				}
+				if (!locations.isEmpty()) {
+					resolved.put(word.getKey(), locations);
+				}
+			}
+			return resolved.toString();
+		} finally {
+			unlockAllReadOnly();
+		}
+	}
+}
@@ -0,0 +1,559 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Builds an index within a memory budget. Local indexes are accumulated in an
+ * in-memory buffer, and whenever the estimated size of the buffer exceeds the
+ * budget it is written to a temporary directory as a sorted run in the
+ * {@link IndexFile} format. Once every file has been added, the runs are merged
+ * word by word into a single index file, or straight into the JSON output, so
+ * only one word of each run is held in memory at a time.
+ *
+ * Each location is expected to be added in a single local index. The location
+ * table of every run is kept in memory while merging.
+ */
+public class SpillingIndexBuilder implements Closeable {
+
+	/** The default memory budget in bytes. */
+	public static final long DEFAULT_BUDGET = 256L << 20;
+
+	/** The estimated heap size of a word in the buffer, beyond its postings. */
+	private static final int BYTES_PER_WORD = 96;
+
+	/** The estimated heap size of a posting in the buffer, beyond its positions. */
+	private static final int BYTES_PER_POSTING = 64;
+
+	/** The estimated heap size of a compressed position in the buffer. */
+	private static final int BYTES_PER_POSITION = 2;
+
+	/** The estimated number of bytes the buffer may hold before it is spilled. */
+	private final long budget;
+
+	/** The directory the runs are written to. */
+	private final Path directory;
+
+	/** The runs written so far, in the order they were started. */
+	private final ArrayList<Path> runs;
+
+	/** The index accumulating local indexes until it is spilled. */
+	private InvertedIndex buffer;
+
+	/** The estimated heap size of the buffer. */
+	private long used;
+
+	/** Whether a full buffer is being written as a run. */
+	private boolean spilling;
+
+	/**
+	 * Initializes a builder that spills runs to a directory
+	 *
+	 * @param budget    the estimated number of bytes to buffer before spilling
+	 * @param directory the directory to write runs to; created if it does not
+	 *                  exist
+	 * @throws IOException if unable to create the directory
+	 */
+	public SpillingIndexBuilder(long budget, Path directory) throws IOException {
+		this.budget = Math.max(1, budget);
+		this.directory = Files.createDirectories(directory);
+		this.runs = new ArrayList<>();
+		this.buffer = new InvertedIndex();
+		this.used = 0;
+		this.spilling = false;
+	}
+
+	/**
+	 * Estimates the heap size of an index from the number of words, postings and
+	 * positions it holds.
+	 *
+	 * @param index the index to measure
+	 * @return the estimated size in bytes
+	 */
+	private static long estimate(InvertedIndex index) {
+		long size = 0;
+		for (var locations : index.words().values()) {
+			size += BYTES_PER_WORD + (long) BYTES_PER_POSTING * locations.size();
+			for (PositionList positions : locations.values()) {
+				size += (long) BYTES_PER_POSITION * positions.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * adds the words of a local index to the buffer, and writes the buffer as a
+	 * run if it has grown beyond the budget. May be called by several threads at
+	 * once; the run is written after the buffer has been replaced, so other
+	 * threads can keep adding while it is written. Only one run is written at a
+	 * time: a thread that fills the buffer while a run is being written waits for
+	 * it, so at most one full buffer is held besides the one being filled.
+	 *
+	 * @param localIndex an InvertedIndex of words, paths, and locations
+	 * @throws IOException if unable to write the run
+	 */
+	public void add(InvertedIndex localIndex) throws IOException {
+		long size = estimate(localIndex);
+		InvertedIndex full;
+		Path run;
+		synchronized (this) {
+			buffer.addAll(localIndex);
+			used += size;
+			while (spilling && used >= budget) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					System.out.println("error occured while waiting for a run to be written");
+				}
+			}
+			if (used < budget) {
+				return;
+			}
+			full = buffer;
+			run = nextRun();
+			buffer = new InvertedIndex();
+			used = 0;
+			spilling = true;
+		}
+
+		try {
+			spill(full, run);
+		} finally {
+			synchronized (this) {
+				spilling = false;
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the file of the next run. The caller must hold the lock of the
+	 * builder.
+	 *
+	 * @return the path to write the run to
+	 */
+	private Path nextRun() {
+		Path run = directory.resolve("run-" + runs.size() + ".bin");
+		runs.add(run);
+		return run;
+	}
+
+	/**
+	 * Writes a buffer to a run file word by word, without copying it into a
+	 * {@link FrozenInvertedIndex} first. The words and location ids of the buffer
+	 * are already sorted, and nothing is removed from a buffer.
+	 *
+	 * @param full the buffer to write
+	 * @param run  the file to write it to
+	 * @throws IOException if unable to write the file
+	 */
+	private static void spill(InvertedIndex full, Path run) throws IOException {
+		full.compress();
+		int[] locations = new int[16];
+		PositionList[] positions = new PositionList[16];
+		try (IndexFile.StreamingWriter writer = new IndexFile.StreamingWriter(run, full.documents());) {
+			for (var word : full.words().entrySet()) {
+				if (word.getValue().size() > locations.length) {
+					locations = new int[Math.max(word.getValue().size(), locations.length * 2)];
+					positions = new PositionList[locations.length];
+				}
+				int count = 0;
+				int frequency = 0;
+				for (var posting : word.getValue().entrySet()) {
+					locations[count] = posting.getKey();
+					positions[count] = posting.getValue();
+					frequency += posting.getValue().size();
+					count++;
+				}
+				writer.add(word.getKey(), frequency, locations, positions, count);
+			}
+		}
+	}
+
+	/**
+	 * Writes whatever is left in the buffer as a final run. Every add must have
+	 * returned before this is called, so no other run is being written.
+	 *
+	 * @throws IOException if unable to write the run
+	 */
+	private synchronized void flush() throws IOException {
+		if (!buffer.words().isEmpty() || buffer.locationCount() > 0) {
+			spill(buffer, nextRun());
+			buffer = new InvertedIndex();
+			used = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of runs written so far.
+	 *
+	 * @return number of runs
+	 */
+	public synchronized int runCount() {
+		return runs.size();
+	}
+
+	/**
+	 * Merges every run into a single index file, which can be loaded with
+	 * {@link IndexFile#read(Path)} or searched in place with
+	 * {@link MappedInvertedIndex}.
+	 *
+	 * @param path the index file to write
+	 * @throws IOException if unable to read a run or write the file
+	 */
+	public void save(Path path) throws IOException {
+		flush();
+		ArrayList<Run> open = open();
+		try {
+			DocumentTable documents = documents(open);
+			try (IndexFile.StreamingWriter writer = new IndexFile.StreamingWriter(path, documents);) {
+				merge(open, writer::add);
+			}
+		} finally {
+			close(open);
+		}
+	}
+
+	/**
+	 * Merges every run straight into the JSON output of the index, without
+	 * writing an index file.
+	 *
+	 * @param path the path to the output file location
+	 * @throws IOException if unable to read a run or write the file
+	 */
+	public void toJSON(Path path) throws IOException {
+		flush();
+		ArrayList<Run> open = open();
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			DocumentTable documents = documents(open);
+			boolean[] first = { true };
+			writer.write("{");
+			merge(open, (word, frequency, locations, positions, count) -> {
+				TreeMap<String, PositionList> resolved = new TreeMap<>();
+				for (int posting = 0; posting < count; posting++) {
+					resolved.put(documents.getPath(locations[posting]), positions[posting]);
+				}
+				if (!first[0]) {
+					writer.write(",");
+				}
+				first[0] = false;
+				writer.write(System.lineSeparator());
+				JSONWriter.indent(1, writer);
+				writer.write("\"");
+				writer.write(word);
+				writer.write("\"");
+				writer.write(": {");
+				JSONWriter.nestedObject(resolved, writer, 1);
+			});
+			writer.write(System.lineSeparator());
+			writer.write("}");
+		} finally {
+			close(open);
+		}
+	}
+
+	/**
+	 * Outputs the map of locations to sizes of every run in a pretty JSON format
+	 *
+	 * @param path the path to the output file location
+	 * @throws IOException if unable to read a run or write the file
+	 */
+	public void outPutLocationMap(Path path) throws IOException {
+		flush();
+		ArrayList<Run> open = open();
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);) {
+			JSONWriter.asObject(documents(open).toMap(), writer, 0);
+		} finally {
+			close(open);
+		}
+	}
+
+	/**
+	 * Deletes every run written by the builder.
+	 *
+	 * @throws IOException if unable to delete a run
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		for (Path run : runs) {
+			Files.deleteIfExists(run);
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Opens every run for reading.
+	 *
+	 * @return the open runs, in the order they were written
+	 * @throws IOException if unable to open a run
+	 */
+	private ArrayList<Run> open() throws IOException {
+		ArrayList<Run> open = new ArrayList<>();
+		try {
+			for (Path run : runs) {
+				open.add(new Run(run, open.size()));
+			}
+		} catch (IOException e) {
+			close(open);
+			throw e;
+		}
+		return open;
+	}
+
+	/**
+	 * Closes runs opened for reading.
+	 *
+	 * @param open the open runs
+	 * @throws IOException if unable to close a run
+	 */
+	private static void close(ArrayList<Run> open) throws IOException {
+		IOException failure = null;
+		for (Run run : open) {
+			try {
+				run.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Builds one location table for every run, and sets the id in that table of
+	 * each location id of each run. The totals of a location found in more than
+	 * one run are summed.
+	 *
+	 * @param open the open runs
+	 * @return the combined location table
+	 */
+	private static DocumentTable documents(ArrayList<Run> open) {
+		DocumentTable documents = new DocumentTable();
+		for (Run run : open) {
+			run.remap = new int[run.documents.size()];
+			for (int local = 0; local < run.remap.length; local++) {
+				int known = documents.size();
+				int document = documents.add(run.documents.getPath(local));
+				int total = run.documents.getTotal(local);
+				if (document < known) {
+					total += documents.getTotal(document);
+				}
+				documents.setTotal(document, total);
+				documents.addTerms(document, run.documents.getTerms(local));
+				run.remap[local] = document;
+			}
+		}
+		return documents;
+	}
+
+	/**
+	 * Walks the sorted words of every run side by side, passing the combined
+	 * postings of each word to a sink in increasing word order. Postings of the
+	 * same word and location in more than one run are combined.
+	 *
+	 * @param open the open runs, with their ids remapped
+	 * @param sink receives the postings of each word
+	 * @throws IOException if unable to read a run or write to the sink
+	 */
+	private static void merge(ArrayList<Run> open, WordSink sink) throws IOException {
+		PriorityQueue<Run> heads = new PriorityQueue<>(Math.max(1, open.size()),
+				Comparator.comparing((Run run) -> run.word).thenComparingInt(run -> run.order));
+		for (Run run : open) {
+			if (run.next()) {
+				heads.add(run);
+			}
+		}
+
+		ArrayList<Run> matching = new ArrayList<>();
+		int[] locations = new int[16];
+		PositionList[] positions = new PositionList[16];
+		while (!heads.isEmpty()) {
+			String word = heads.peek().word;
+			matching.clear();
+			while (!heads.isEmpty() && heads.peek().word.equals(word)) {
+				matching.add(heads.poll());
+			}
+
+			int count = 0;
+			boolean sorted = true;
+			for (Run run : matching) {
+				if (count + run.count > locations.length) {
+					int capacity = Math.max(count + run.count, locations.length * 2);
+					locations = Arrays.copyOf(locations, capacity);
+					positions = Arrays.copyOf(positions, capacity);
+				}
+				for (int posting = 0; posting < run.count; posting++) {
+					int document = run.remap[run.postings.readInt()];
+					int size = run.postings.readInt();
+					byte[] encoded = new byte[run.postings.readInt()];
+					run.postings.readFully(encoded);
+					if (count > 0 && document <= locations[count - 1]) {
+						sorted = false;
+					}
+					locations[count] = document;
+					positions[count] = new PositionList(encoded, size);
+					count++;
+				}
+			}
+
+			if (!sorted) {
+				TreeMap<Integer, PositionList> combined = new TreeMap<>();
+				for (int posting = 0; posting < count; posting++) {
+					PositionList previous = combined.get(locations[posting]);
+					if (previous == null) {
+						combined.put(locations[posting], positions[posting]);
+					} else {
+						PositionList union = previous.copy();
+						union.addAll(positions[posting]);
+						union.compress();
+						combined.put(locations[posting], union);
+					}
+				}
+				count = 0;
+				for (var entry : combined.entrySet()) {
+					locations[count] = entry.getKey();
+					positions[count] = entry.getValue();
+					count++;
+				}
+			}
+
+			int frequency = 0;
+			for (int posting = 0; posting < count; posting++) {
+				frequency += positions[posting].size();
+			}
+			sink.accept(word, frequency, locations, positions, count);
+
+			for (Run run : matching) {
+				if (run.next()) {
+					heads.add(run);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Receives the postings of one word at a time from
+	 * {@link SpillingIndexBuilder#merge(ArrayList, WordSink)}.
+	 */
+	private interface WordSink {
+		/**
+		 * Receives the postings of a word.
+		 *
+		 * @param word      the word
+		 * @param frequency the number of positions across all postings
+		 * @param locations the location id of each posting, in increasing order
+		 * @param positions the positions of each posting
+		 * @param count     the number of postings
+		 * @throws IOException if unable to write the postings
+		 */
+		void accept(String word, int frequency, int[] locations, PositionList[] positions, int count)
+				throws IOException;
+	}
+
+	/**
+	 * A run opened for reading, with one stream over its postings and one over its
+	 * dictionary, so both can be read in order without seeking.
+	 */
+	private static class Run implements Closeable {
+		/** The order the run was written in, which breaks ties between equal words. */
+		private final int order;
+
+		/** The location table of the run. */
+		private final DocumentTable documents;
+
+		/** The channels the streams read from. */
+		private final FileChannel postingChannel;
+		private final FileChannel dictionaryChannel;
+
+		/** The streams over the postings and the dictionary. */
+		private final DataInputStream postings;
+		private final DataInputStream dictionary;
+
+		/** The number of dictionary entries not yet read. */
+		private int remaining;
+
+		/** The id in the combined table of each location id of the run. */
+		private int[] remap;
+
+		/** The current word, and the number of its postings. */
+		private String word;
+		private int count;
+
+		/**
+		 * Opens a run and reads its header and location table.
+		 *
+		 * @param path  the run file
+		 * @param order the order the run was written in
+		 * @throws IOException if unable to read the file, or if it is not a valid
+		 *                     index file
+		 */
+		public Run(Path path, int order) throws IOException {
+			this.order = order;
+			this.postingChannel = FileChannel.open(path, StandardOpenOption.READ);
+			this.dictionaryChannel = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				long size = postingChannel.size();
+				ByteBuffer footer = ByteBuffer.allocate(IndexFile.FOOTER_SIZE);
+				while (footer.hasRemaining()) {
+					if (postingChannel.read(footer, size - IndexFile.FOOTER_SIZE + footer.position()) < 0) {
+						throw new IOException("Corrupt index file: " + path);
+					}
+				}
+				long dictionaryOffset = footer.getLong(Long.BYTES);
+				if (footer.getInt(2 * Long.BYTES) != IndexFile.MAGIC) {
+					throw new IOException("Corrupt index file: " + path);
+				}
+
+				this.postings = IndexFile.open(postingChannel, 0);
+				this.remaining = IndexFile.readHeader(postings, path);
+				int documentCount = postings.readInt();
+				postings.readLong();
+				postings.readLong();
+				this.documents = IndexFile.readDocuments(postings, documentCount);
+				this.dictionary = IndexFile.open(dictionaryChannel, dictionaryOffset);
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		/**
+		 * Reads the next dictionary entry.
+		 *
+		 * @return true if there was another word
+		 * @throws IOException if unable to read the file
+		 */
+		public boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			word = IndexFile.readString(dictionary);
+			dictionary.readInt();
+			count = dictionary.readInt();
+			dictionary.readLong();
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				postingChannel.close();
+			} finally {
+				dictionaryChannel.close();
+			}
+		}
+	}
+}
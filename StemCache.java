@@ -0,0 +1,222 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * A thread-safe, size-bounded cache of words to their stems. Natural language
+ * text repeats a small vocabulary, so most words are stemmed only once. Misses
+ * are stemmed with a stemmer taken from a pool for the duration of the call,
+ * since stemmers are not thread-safe. The pool holds as many stemmers as threads
+ * ever missed at once, so it stays small even when every task runs on its own
+ * virtual thread. When the cache is full, part of it is evicted with the CLOCK
+ * algorithm: a hit marks the word as referenced, and the eviction hand sweeps
+ * the cache, giving referenced words a second chance by clearing their mark and
+ * evicting the words that were not referenced since the hand last passed them.
+ * Counters of hits, misses and evictions are kept for tuning.
+ *
+ * Every word maps to one shared stem string, so indexes built through the cache
+ * also share the stem strings instead of keeping a copy per occurrence.
+ */
+public class StemCache {
+
+	/** The default maximum number of cached words. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/** The fraction of the cache evicted when it is full, as a shift. */
+	private static final int EVICTION_SHIFT = 3;
+
+	/** The cache shared by the index builders and query parsers. */
+	private static final StemCache SHARED = new StemCache(DEFAULT_CAPACITY);
+
+	/** The stemmers not in use by any thread. */
+	private static final ConcurrentLinkedQueue<Stemmer> STEMMERS = new ConcurrentLinkedQueue<>();
+
+	/** Cached words and their stems. */
+	private final ConcurrentHashMap<String, Stem> stems;
+
+	/** The eviction hand, which resumes where the last eviction stopped. */
+	private Iterator<Map.Entry<String, Stem>> hand;
+
+	/** The maximum number of cached words. */
+	private final int capacity;
+
+	/** Whether a thread is currently evicting words. */
+	private final AtomicBoolean evicting;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+
+	/**
+	 * Initializes an empty cache.
+	 *
+	 * @param capacity the maximum number of cached words
+	 */
+	public StemCache(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.stems = new ConcurrentHashMap<>(Math.min(capacity, DEFAULT_CAPACITY));
+		this.evicting = new AtomicBoolean();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	/**
+	 * Returns the cache shared by the index builders and query parsers.
+	 *
+	 * @return the shared cache
+	 */
+	public static StemCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns the stem of a word, stemming and caching it if needed.
+	 *
+	 * @param word the cleaned word to stem
+	 * @return the stem of the word
+	 */
+	public String stem(String word) {
+		Stem cached = stems.get(word);
+		if (cached != null) {
+			hits.increment();
+			if (!cached.referenced) {
+				cached.referenced = true;
+			}
+			return cached.stem;
+		}
+
+		misses.increment();
+		String stem;
+		Stemmer stemmer = STEMMERS.poll();
+		if (stemmer == null) {
+			stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		}
+		try {
+			stem = stemmer.stem(word).toString();
+		} finally {
+			STEMMERS.add(stemmer);
+		}
+		if (stems.size() >= capacity) {
+			evict();
+		}
+		Stem previous = stems.putIfAbsent(word, new Stem(stem));
+		return previous != null ? previous.stem : stem;
+	}
+
+	/**
+	 * Removes part of the cache to make room for new words, sweeping the eviction
+	 * hand around the cache until enough words that were not referenced are
+	 * evicted. Only one thread evicts at a time; other threads may overfill the
+	 * cache a little in the meantime.
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			int target = capacity - Math.max(1, capacity >> EVICTION_SHIFT);
+			while (stems.size() > target) {
+				if (hand == null || !hand.hasNext()) {
+					hand = stems.entrySet().iterator();
+					if (!hand.hasNext()) {
+						return;
+					}
+				}
+				Stem cached = hand.next().getValue();
+				if (cached.referenced) {
+					cached.referenced = false;
+				} else {
+					hand.remove();
+					evictions.increment();
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	/**
+	 * Removes every cached word.
+	 */
+	public void clear() {
+		stems.clear();
+	}
+
+	/**
+	 * Returns the number of cached words.
+	 *
+	 * @return number of cached words
+	 */
+	public int size() {
+		return stems.size();
+	}
+
+	/**
+	 * Returns the maximum number of cached words.
+	 *
+	 * @return the capacity of the cache
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of words found in the cache.
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of words that had to be stemmed.
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of words evicted to make room.
+	 *
+	 * @return number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * A cached stem, and whether it was found in the cache since the eviction
+	 * hand last passed it.
+	 */
+	private static class Stem {
+		private final String stem;
+		private volatile boolean referenced;
+
+		public Stem(String stem) {
+			this.stem = stem;
+			this.referenced = false;
+		}
+	}
+
+	/**
+	 * Returns a summary of the cache counters
+	 */
+	@Override
+	public String toString() {
+		long total = getHits() + getMisses();
+		return String.format("stems: %d/%d, hits: %d, misses: %d (%.1f%% hit rate), evictions: %d", size(),
+				capacity, getHits(), getMisses(), total == 0 ? 0.0 : 100.0 * getHits() / total, getEvictions());
+	}
+}
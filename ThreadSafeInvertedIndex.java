@@ -1,20 +1,45 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
-public class ThreadSafeInvertedIndex extends InvertedIndex {
+public class ThreadSafeInvertedIndex extends InvertedIndex implements ConcurrentIndex {
 
 	/**
 	 * Initializes the index
 	 */
 	public ThreadSafeInvertedIndex() {
+		this(new SimpleReadWriteLock());
+	}
+
+	/**
+	 * Initializes the index protected by the specified lock
+	 * 
+	 * @param lock the lock guarding reads and writes of the index
+	 */
+	public ThreadSafeInvertedIndex(ReadWriteLock lock) {
 		super();
-		lock = new ReadWriteLock();
+		this.lock = lock;
+		this.optimistic = lock instanceof OptimisticReadWriteLock ? (OptimisticReadWriteLock) lock : null;
 	}
 
 	private final ReadWriteLock lock;
 
+	/** The lock if it supports optimistic reads, or null. */
+	private final OptimisticReadWriteLock optimistic;
+
+	/**
+	 * Returns the locks guarding the index, so their contention can be reported.
+	 * 
+	 * @return the locks of the index
+	 */
+	public List<ReadWriteLock> locks() {
+		return List.of(lock);
+	}
+
 	/**
 	 * calls JSON writing methods for outputting InvertedIndex
 	 * 
@@ -58,6 +83,37 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * merges another index into this one by walking the sorted words of both.
+	 * 
+	 * @param other an InvertedIndex of words, paths, and locations
+	 */
+	public void merge(InvertedIndex other) {
+		lock.lockReadWrite();
+		try {
+			super.merge(other);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * adds every word of a location to the index under a single acquisition of the
+	 * write lock.
+	 * 
+	 * @param location      the file path for where the words were found
+	 * @param termPositions map of stemmed words to their positions in the location
+	 * @param totalWords    the number of words in the location
+	 */
+	public void addDocument(String location, Map<String, PositionList> termPositions, int totalWords) {
+		lock.lockReadWrite();
+		try {
+			super.addDocument(location, termPositions, totalWords);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
 	/**
 	 * adds word, locations, and positions to inverted index inside a nested TreeMap
 	 * data Structure
@@ -75,6 +131,111 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * removes locations from the index by marking them with tombstones. Only the
+	 * document table is changed, so the write lock is held briefly.
+	 * 
+	 * @param locations the location paths to remove
+	 * @return the number of locations that were in the index
+	 */
+	public int removeAll(Collection<String> locations) {
+		lock.lockReadWrite();
+		try {
+			return super.removeAll(locations);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * replaces a location with the contents of a local index under a single write
+	 * lock, so searches see either the old or the new postings.
+	 * 
+	 * @param location   the location path to replace
+	 * @param localIndex an InvertedIndex of the new words and positions of the
+	 *                   location
+	 */
+	public void replace(String location, InvertedIndex localIndex) throws IOException {
+		lock.lockReadWrite();
+		try {
+			super.removeAll(List.of(location));
+			super.addAll(localIndex);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * purges the postings of every removed location from the index. The words are
+	 * purged in batches, releasing the write lock between batches so searches are
+	 * not blocked for the whole pass.
+	 */
+	public void compact() {
+		BitSet removed;
+		lock.lockReadOnly();
+		try {
+			removed = documents().pending();
+		} finally {
+			lock.unlockReadOnly();
+		}
+		if (removed.isEmpty()) {
+			return;
+		}
+
+		String next = "";
+		while (next != null) {
+			lock.lockReadWrite();
+			try {
+				next = purgeWords(removed, next, PURGE_BATCH);
+			} finally {
+				lock.unlockReadWrite();
+			}
+		}
+
+		lock.lockReadWrite();
+		try {
+			documents().purged(removed);
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Purges removed locations on a work queue, without waiting for it to finish.
+	 * 
+	 * @param queue the work queue to compact with
+	 */
+	public void compact(WorkQueue queue) {
+		queue.executeOrRun(this::compact);
+	}
+
+	/**
+	 * Compresses the position lists of every word and location in the index.
+	 */
+	public void compress() {
+		lock.lockReadWrite();
+		try {
+			super.compress();
+		} finally {
+			lock.unlockReadWrite();
+		}
+	}
+
+	/**
+	 * Builds an immutable snapshot of the index that can be searched without
+	 * locking.
+	 * 
+	 * @return a frozen copy of the index
+	 */
+	public FrozenInvertedIndex freeze() {
+		lock.lockReadOnly();
+		try {
+			return super.freeze();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
 	/**
 	 * Tests whether the index contains the specified word.
 	 *
@@ -100,7 +261,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * 
 	 * @return a sorted map of SearchResults
 	 */
-	public ArrayList<SearchResult> exactSearch(List<String> query) {
+	public ArrayList<SearchResult> exactSearch(Collection<String> query) {
 		lock.lockReadOnly();
 		try {
 			ArrayList<SearchResult> searchMap = super.exactSearch(query);
@@ -119,7 +280,7 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	 * 
 	 * @return a sorted map of SearchResults
 	 */
-	public ArrayList<SearchResult> partialSearch(List<String> query) {
+	public ArrayList<SearchResult> partialSearch(Collection<String> query) {
 		lock.lockReadOnly();
 		try {
 			ArrayList<SearchResult> searchMap = super.partialSearch(query);
@@ -186,11 +347,23 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 	}
 
 	/**
-	 * Returns the total number of words in the inverted index.
+	 * Returns the total number of words in the inverted index. Tries an optimistic
+	 * read first, since the count is the size of the word map unless removed
+	 * locations are waiting to be purged, in which case the words are counted
+	 * under the read lock.
 	 * 
 	 * @return int number of words in the index
 	 */
 	public int wordCount() {
+		long stamp = optimistic != null ? optimistic.tryOptimisticRead() : 0;
+		if (stamp != 0) {
+			boolean pending = documents().hasPending();
+			int result = words().size();
+			if (!pending && optimistic.validate(stamp)) {
+				return result;
+			}
+		}
+
 		lock.lockReadOnly();
 		try {
 			int result = super.wordCount();
@@ -254,6 +427,72 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	/**
+	 * Returns the total number of word occurrences in the inverted index. Tries an
+	 * optimistic read of the running token count first, unless removed locations
+	 * are waiting to be purged.
+	 * 
+	 * @return number of positions stored across all words and locations
+	 */
+	public long tokenCount() {
+		long stamp = optimistic != null ? optimistic.tryOptimisticRead() : 0;
+		if (stamp != 0) {
+			boolean pending = documents().hasPending();
+			long result = statistics().tokenCount();
+			if (!pending && optimistic.validate(stamp)) {
+				return result;
+			}
+		}
+
+		lock.lockReadOnly();
+		try {
+			long result = super.tokenCount();
+			return result;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of words found in a location.
+	 * 
+	 * @param path path to look for
+	 * 
+	 * @return number of words in the location, or 0 if the location is not stored
+	 */
+	public int tokenCount(Path path) {
+		lock.lockReadOnly();
+		try {
+			int result = super.tokenCount(path);
+			return result;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	/**
+	 * Returns the number of locations in the inverted index.
+	 * 
+	 * @return number of locations
+	 */
+	public int locationCount() {
+		long stamp = optimistic != null ? optimistic.tryOptimisticRead() : 0;
+		if (stamp != 0) {
+			int result = super.locationCount();
+			if (optimistic.validate(stamp)) {
+				return result;
+			}
+		}
+
+		lock.lockReadOnly();
+		try {
+			int result = super.locationCount();
+			return result;
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
 	/**
 	 * Returns the number of times a path was found (i.e. the number of positions
 	 * associated with a path in the index).
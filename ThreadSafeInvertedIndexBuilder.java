@@ -1,6 +1,17 @@
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 public class ThreadSafeInvertedIndexBuilder {
 	/**
@@ -8,47 +19,482 @@ public class ThreadSafeInvertedIndexBuilder {
 	 * examines paths: if the path is a directory then it enters the directory and
 	 * calls itself again. When the function finds a file with a txt variation
 	 * ending it will call a stem file function.
-	 * 
+	 *
 	 * @throws IOException if unable to read or write to file
-	 * 
+	 *
 	 * @param directory     a path object. Can be a directory or path to a specific
 	 *                      file
 	 * @param InvertedIndex a data structure that will be populated with words,
 	 *                      paths, integers that lives in main
 	 */
-	public static void traverse(Path directory, ThreadSafeInvertedIndex index, WorkQueue queue)
+	public static void traverse(Path directory, ConcurrentIndex index, WorkQueue queue)
 			throws IOException {
+		traverse(directory, index, queue, false);
+	}
+
+	/**
+	 * Walks a directory on the work queue and parses every text file found into
+	 * the index. If largest first, the whole directory is walked before any file
+	 * is parsed, and the files are then parsed in decreasing order of size, so no
+	 * large file is left to be parsed alone at the end of the build.
+	 *
+	 * @throws IOException if unable to read or write to file
+	 *
+	 * @param directory    a path object. Can be a directory or path to a specific
+	 *                     file
+	 * @param index        the index to add every text file to
+	 * @param queue        the work queue to walk and parse with
+	 * @param largestFirst whether to parse the largest files first
+	 */
+	public static void traverse(Path directory, ConcurrentIndex index, WorkQueue queue,
+			boolean largestFirst) throws IOException {
+		traverse(directory, index, queue, largestFirst, 0);
+	}
+
+	/**
+	 * Walks a directory on the work queue and parses every text file found into
+	 * the index, as {@link #traverse(Path, ConcurrentIndex, WorkQueue,
+	 * boolean)} does. Any file larger than the chunk size is split into line
+	 * aligned chunks that are parsed by several tasks at once, so a single large
+	 * file does not hold up the build on one thread.
+	 *
+	 * @throws IOException if unable to read or write to file
+	 *
+	 * @param directory    a path object. Can be a directory or path to a specific
+	 *                     file
+	 * @param index        the index to add every text file to
+	 * @param queue        the work queue to walk and parse with
+	 * @param largestFirst whether to parse the largest files first
+	 * @param chunkSize    the size in bytes above which a file is parsed in chunks,
+	 *                     or 0 to parse every file on one thread
+	 * @see ChunkedFileStemmer
+	 */
+	public static void traverse(Path directory, ConcurrentIndex index, WorkQueue queue,
+			boolean largestFirst, long chunkSize) throws IOException {
+		traverse(directory, queue, file -> new AddTask(file, index, queue, chunkSize), largestFirst);
+	}
+
+	/**
+	 * Builds the index with each task accumulating the file it parses into a local
+	 * index no other task is using, without locking. Once every file is parsed, the
+	 * local indexes are merged pairwise on the work queue, halving their number
+	 * each round, and the final index is merged into the shared one. Waits for all
+	 * work in the queue to finish.
+	 *
+	 * @throws IOException if unable to read or write to file
+	 *
+	 * @param directory a path object. Can be a directory or path to a specific
+	 *                  file
+	 * @param index     the shared index to merge the result into
+	 * @param queue     the work queue to parse and merge with
+	 */
+	public static void traverseMerged(Path directory, ConcurrentIndex index, WorkQueue queue)
+			throws IOException {
+		traverseMerged(directory, index, queue, false);
+	}
+
+	/**
+	 * Builds the index from thread local indexes as
+	 * {@link #traverseMerged(Path, ConcurrentIndex, WorkQueue)} does,
+	 * optionally parsing the largest files first.
+	 *
+	 * @throws IOException if unable to read or write to file
+	 *
+	 * @param directory    a path object. Can be a directory or path to a specific
+	 *                     file
+	 * @param index        the shared index to merge the result into
+	 * @param queue        the work queue to parse and merge with
+	 * @param largestFirst whether to parse the largest files first
+	 */
+	public static void traverseMerged(Path directory, ConcurrentIndex index, WorkQueue queue,
+			boolean largestFirst) throws IOException {
+		Partials partials = new Partials();
+
+		try {
+			traverse(directory, queue, file -> new LocalAddTask(file, partials, queue), largestFirst);
+		} finally {
+			queue.finish();
+		}
+
+		ArrayList<InvertedIndex> round = new ArrayList<>(partials.all);
+		while (round.size() > 1) {
+			ArrayList<InvertedIndex> next = new ArrayList<>();
+			for (int i = 0; i + 1 < round.size(); i += 2) {
+				InvertedIndex left = round.get(i);
+				InvertedIndex right = round.get(i + 1);
+				queue.executeOrRun(() -> left.merge(right));
+				next.add(left);
+			}
+			if (round.size() % 2 == 1) {
+				next.add(round.get(round.size() - 1));
+			}
+			queue.finish();
+			round = next;
+		}
+
+		if (!round.isEmpty()) {
+			index.merge(round.get(0));
+		}
+	}
+
+	/**
+	 * Parses every text file under a directory on the work queue, adding each
+	 * local index to a builder that spills them to disk once they exceed its memory
+	 * budget. Waits for all work in the queue to finish.
+	 *
+	 * @throws IOException if unable to read or write to file
+	 *
+	 * @param directory a path object. Can be a directory or path to a specific
+	 *                  file
+	 * @param spill     the builder to add the local indexes to
+	 * @param queue     the work queue to parse with
+	 */
+	public static void traverseSpilled(Path directory, SpillingIndexBuilder spill, WorkQueue queue)
+			throws IOException {
+		traverseSpilled(directory, spill, queue, false);
+	}
+
+	/**
+	 * Parses every text file under a directory into a spilling builder as
+	 * {@link #traverseSpilled(Path, SpillingIndexBuilder, WorkQueue)} does,
+	 * optionally parsing the largest files first.
+	 *
+	 * @throws IOException if unable to read or write to file
+	 *
+	 * @param directory    a path object. Can be a directory or path to a specific
+	 *                     file
+	 * @param spill        the builder to add the local indexes to
+	 * @param queue        the work queue to parse with
+	 * @param largestFirst whether to parse the largest files first
+	 */
+	public static void traverseSpilled(Path directory, SpillingIndexBuilder spill, WorkQueue queue,
+			boolean largestFirst) throws IOException {
+		try {
+			traverse(directory, queue, file -> new SpillTask(file, spill, queue), largestFirst);
+		} finally {
+			queue.finish();
+		}
+	}
+
+	/**
+	 * Walks a directory and executes the task created for every text file found.
+	 * Each subdirectory is listed by its own task on the work queue, so
+	 * directories are walked in parallel with each other and with the parsing.
+	 * If largest first, waits for the walk to finish, then executes the tasks in
+	 * decreasing order of file size.
+	 *
+	 * @throws IOException if unable to read the directory
+	 *
+	 * @param directory    a path object. Can be a directory or path to a specific
+	 *                     file
+	 * @param queue        the work queue to execute tasks with
+	 * @param tasks        creates the task for a text file
+	 * @param largestFirst whether to execute the tasks of the largest files first
+	 */
+	private static void traverse(Path directory, WorkQueue queue, Function<Path, Runnable> tasks,
+			boolean largestFirst) throws IOException {
+		if (!largestFirst) {
+			walk(directory, queue, (file, size) -> execute(queue, file, tasks));
+			return;
+		}
+
+		ConcurrentLinkedQueue<TextFile> found = new ConcurrentLinkedQueue<>();
+		try {
+			walk(directory, queue, (file, size) -> found.add(new TextFile(file, size)));
+		} finally {
+			queue.finish();
+		}
+
+		ArrayList<TextFile> files = new ArrayList<>(found);
+		files.sort(Comparator.comparingLong((TextFile file) -> file.size).reversed());
+		for (TextFile file : files) {
+			execute(queue, file.path, tasks);
+		}
+	}
+
+	/**
+	 * Executes the task created for a text file. If the queue rejects it, the
+	 * file is reported and left out of the build.
+	 *
+	 * @param queue the work queue to execute the task with
+	 * @param file  the text file
+	 * @param tasks creates the task for a text file
+	 */
+	private static void execute(WorkQueue queue, Path file, Function<Path, Runnable> tasks) {
+		try {
+			queue.execute(tasks.apply(file));
+		} catch (RejectedExecutionException e) {
+			System.out.println("Work queue rejected file: " + file);
+		}
+	}
+
+	/**
+	 * Walks a directory, passing every text file found and its size to a
+	 * consumer. The top directory is listed on the calling thread, and every
+	 * subdirectory by a {@link WalkTask} on the work queue.
+	 *
+	 * @throws IOException if unable to read the top directory
+	 *
+	 * @param directory a path object. Can be a directory or path to a specific
+	 *                  file
+	 * @param queue     the work queue to list subdirectories with
+	 * @param found     receives each text file and its size in bytes
+	 */
+	private static void walk(Path directory, WorkQueue queue, BiConsumer<Path, Long> found) throws IOException {
 		if (Files.isDirectory(directory)) {
-			try (var listing = Files.newDirectoryStream(directory)) {
-				for (Path path : listing) {
-					traverse(path, index, queue);
+			list(directory, queue, found);
+		} else if (Files.exists(directory) && isTextFile(directory)) {
+			found.accept(directory, Files.size(directory));
+		}
+	}
+
+	/**
+	 * Lists one directory, passing its text files to a consumer and executing a
+	 * {@link WalkTask} for each of its subdirectories. The attributes of each entry
+	 * are read once, for both its type and its size.
+	 *
+	 * @throws IOException if unable to read the directory
+	 *
+	 * @param directory the directory to list
+	 * @param queue     the work queue to list subdirectories with
+	 * @param found     receives each text file and its size in bytes
+	 */
+	private static void list(Path directory, WorkQueue queue, BiConsumer<Path, Long> found) throws IOException {
+		try (var listing = Files.newDirectoryStream(directory)) {
+			for (Path path : listing) {
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (IOException e) {
+					continue;
+				}
+				if (attributes.isDirectory()) {
+					queue.executeOrRun(new WalkTask(path, queue, found));
+				} else if (isTextFile(path)) {
+					found.accept(path, attributes.size());
 				}
 			}
-		} else if (Files.exists(directory)) {
-			String stringLower = directory.toString().toLowerCase();
-			if ((stringLower.endsWith(".txt") == true) || (stringLower.endsWith(".text") == true)) {
-				queue.execute(new AddTask(directory, index));
+		}
+	}
+
+	/**
+	 * Tests whether a file has a txt variation ending.
+	 *
+	 * @param file the file to test
+	 * @return true if the file name ends in .txt or .text, ignoring case
+	 */
+	private static boolean isTextFile(Path file) {
+		String stringLower = file.toString().toLowerCase();
+		return stringLower.endsWith(".txt") || stringLower.endsWith(".text");
+	}
+
+	/**
+	 * Compresses the buffered positions of a file before they are added to an
+	 * index, so no lock is held while compressing.
+	 *
+	 * @param terms map of stemmed words to their positions in a file
+	 */
+	private static void compress(Map<String, PositionList> terms) {
+		for (PositionList positions : terms.values()) {
+			positions.compress();
+		}
+	}
+
+	/**
+	 * Parses a file into a buffer of words and positions through the CPU-bound
+	 * work of the queue, reading the whole file first if the queue prefetches.
+	 *
+	 * @param file  the file to parse
+	 * @param terms map of stemmed words to their positions in the file
+	 * @param queue the work queue running the task, or null
+	 * @return the number of words in the file
+	 * @throws IOException if unable to read the file
+	 */
+	private static int stem(Path file, HashMap<String, PositionList> terms, WorkQueue queue) throws IOException {
+		if (queue == null) {
+			return InvertedIndexBuilder.stemTerms(file, terms);
+		}
+		if (queue.prefetch()) {
+			byte[] bytes = Files.readAllBytes(file);
+			return queue.compute(() -> InvertedIndexBuilder.stemBytes(bytes, terms));
+		}
+		return queue.compute(() -> InvertedIndexBuilder.stemTerms(file, terms));
+	}
+
+	/**
+	 * The local indexes of a merged build. A task takes an idle local index while
+	 * it holds a permit for CPU-bound work and gives it back before releasing the
+	 * permit, so there are never more local indexes than tasks computing at once,
+	 * whether tasks run on a few worker threads or each on its own virtual thread.
+	 */
+	private static class Partials {
+		private final List<InvertedIndex> all = Collections.synchronizedList(new ArrayList<>());
+		private final ConcurrentLinkedQueue<InvertedIndex> idle = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * Takes an idle local index, or creates one if every one is in use.
+		 *
+		 * @return a local index no other task is using
+		 */
+		public InvertedIndex take() {
+			InvertedIndex partial = idle.poll();
+			if (partial == null) {
+				partial = new InvertedIndex();
+				all.add(partial);
+			}
+			return partial;
+		}
+
+		/**
+		 * Gives back a local index taken with {@link #take()}.
+		 *
+		 * @param partial the local index
+		 */
+		public void release(InvertedIndex partial) {
+			idle.add(partial);
+		}
+	}
+
+	/**
+	 * A text file found by the walk, and its size in bytes.
+	 */
+	private static class TextFile {
+		private final Path path;
+		private final long size;
+
+		public TextFile(Path path, long size) {
+			this.path = path;
+			this.size = size;
+		}
+	}
+
+	static class WalkTask implements Runnable {
+		private final Path directory;
+		private final WorkQueue queue;
+		private final BiConsumer<Path, Long> found;
+
+		public WalkTask(Path directory, WorkQueue queue, BiConsumer<Path, Long> found) {
+			this.directory = directory;
+			this.queue = queue;
+			this.found = found;
+		}
+
+		@Override
+		public void run() {
+			try {
+				list(directory, queue, found);
+			} catch (IOException e) {
+				System.out.println("Could not walk directory: " + directory);
+				queue.reportFailure();
 			}
 		}
 	}
 
 	static class AddTask implements Runnable {
 		private final Path file;
-		private final ThreadSafeInvertedIndex index;
+		private final ConcurrentIndex index;
+		private final WorkQueue queue;
+		private final long chunkSize;
+
+		public AddTask(Path file, ConcurrentIndex index) {
+			this(file, index, null, 0);
+		}
 
-		public AddTask(Path file, ThreadSafeInvertedIndex index) {
+		public AddTask(Path file, ConcurrentIndex index, WorkQueue queue, long chunkSize) {
 			this.file = file;
 			this.index = index;
+			this.queue = queue;
+			this.chunkSize = chunkSize;
+		}
+
+		/**
+		 * Parses the file and adds its words to the index.
+		 *
+		 * @throws IOException if unable to read the file
+		 */
+		public void add() throws IOException {
+			if (queue != null && chunkSize > 0 && Files.size(file) > chunkSize) {
+				ChunkedFileStemmer.stemFile(file, chunkSize, queue, index::addAll);
+				return;
+			}
+
+			HashMap<String, PositionList> terms = new HashMap<>();
+			int total = stem(file, terms, queue);
+			compress(terms);
+			index.addDocument(file.toString(), terms, total);
 		}
 
 		@Override
 		public void run() {
 			try {
-				InvertedIndex localIndex = new InvertedIndex();
-				InvertedIndexBuilder.stemFile(file, localIndex);
-				index.addAll(localIndex);
+				add();
 			} catch (IOException e) {
 				System.out.println("Could not build local index from file");
+				if (queue != null) {
+					queue.reportFailure();
+				}
+			}
+		}
+	}
+
+	static class LocalAddTask implements Runnable {
+		private final Path file;
+		private final Partials partials;
+		private final WorkQueue queue;
+
+		public LocalAddTask(Path file, Partials partials, WorkQueue queue) {
+			this.file = file;
+			this.partials = partials;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				HashMap<String, PositionList> terms = new HashMap<>();
+				byte[] bytes = queue.prefetch() ? Files.readAllBytes(file) : null;
+				queue.compute(() -> {
+					int total = bytes != null ? InvertedIndexBuilder.stemBytes(bytes, terms)
+							: InvertedIndexBuilder.stemTerms(file, terms);
+					compress(terms);
+					InvertedIndex partial = partials.take();
+					try {
+						partial.addDocument(file.toString(), terms, total);
+					} finally {
+						partials.release(partial);
+					}
+					return null;
+				});
+			} catch (IOException e) {
+				System.out.println("Could not build local index from file");
+				queue.reportFailure();
+			}
+		}
+	}
+
+	static class SpillTask implements Runnable {
+		private final Path file;
+		private final SpillingIndexBuilder spill;
+		private final WorkQueue queue;
+
+		public SpillTask(Path file, SpillingIndexBuilder spill, WorkQueue queue) {
+			this.file = file;
+			this.spill = spill;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				HashMap<String, PositionList> terms = new HashMap<>();
+				int total = stem(file, terms, queue);
+				compress(terms);
+				InvertedIndex localIndex = new InvertedIndex();
+				localIndex.addDocument(file.toString(), terms, total);
+				spill.add(localIndex);
+			} catch (IOException e) {
+				System.out.println("Could not add local index to spilled build");
+				queue.reportFailure();
 			}
 		}
 	}
@@ -4,32 +4,49 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ThreadSafeQueryParser implements FileParser {
 
 	private final TreeMap<String, ArrayList<SearchResult>> resultMap;
-	private final ThreadSafeInvertedIndex index;
+	private final SearchableIndex index;
 	private final WorkQueue queue;
 
-	// TODO
 	/**
-	 * @param index
-	 * @param queue
+	 * Initializes a query parser that searches an index on a work queue.
+	 *
+	 * @param index the index to search
+	 * @param queue the work queue to search with
 	 */
-	public ThreadSafeQueryParser(ThreadSafeInvertedIndex index, WorkQueue queue) {
+	public ThreadSafeQueryParser(SearchableIndex index, WorkQueue queue) {
 		resultMap = new TreeMap<>();
 		this.index = index;
 		this.queue = queue;
 	}
 
+	/**
+	 * Submits a search of every line of the query file, and collects the results
+	 * of those searches on the calling thread. Searches that have finished are
+	 * collected while the file is still being read, so a bounded queue keeps the
+	 * number of searches in memory bounded too. Only the searches of this file are
+	 * waited for, not any other work in the queue. The searches never touch the
+	 * result map, so it needs no lock as long as one thread uses the parser.
+	 */
 	@Override
 	public void parseQueryFile(Path queryPath, boolean searchFlag) throws IOException {
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		ArrayDeque<CompletableFuture<Map.Entry<String, ArrayList<SearchResult>>>> searches = new ArrayDeque<>();
 
 		try (BufferedReader reader = Files.newBufferedReader(queryPath, StandardCharsets.UTF_8);) {
 
@@ -38,87 +55,95 @@ public class ThreadSafeQueryParser implements FileParser {
 			line = reader.readLine();
 
 			while (line != null) {
-				queue.execute(new SearchTask(line, searchFlag));
+				try {
+					searches.add(queue.submit(new SearchTask(line, searchFlag, seen)));
+				} catch (RejectedExecutionException e) {
+					System.out.println("Work queue rejected query: " + line);
+				}
+				collect(searches, false);
 				line = reader.readLine();
 			}
-			reader.close();
 		} catch (IOException e) {
 			System.out.println("invalid path");
 		} finally {
-			queue.finish();
+			collect(searches, true);
+		}
+	}
+
+	/**
+	 * Removes searches from the front of the deque in turn and adds their results
+	 * to the result map.
+	 *
+	 * @param searches the unfinished searches of a query file, in submission order
+	 * @param wait     whether to wait for every search, or stop at the first one
+	 *                 that has not finished yet
+	 */
+	private void collect(Deque<CompletableFuture<Map.Entry<String, ArrayList<SearchResult>>>> searches,
+			boolean wait) {
+		while (!searches.isEmpty() && (wait || searches.peekFirst().isDone())) {
+			CompletableFuture<Map.Entry<String, ArrayList<SearchResult>>> search = searches.pollFirst();
+			Map.Entry<String, ArrayList<SearchResult>> result;
+			try {
+				result = search.join();
+			} catch (CompletionException e) {
+				System.out.println("Could not search query: " + e.getCause());
+				continue;
+			}
+			if (result != null) {
+				resultMap.put(result.getKey(), result.getValue());
+			}
 		}
 	}
 
 	@Override
 	public void outputResultMap(Writer writer) throws IOException {
-		synchronized (resultMap) {
-			JSONWriter.asSearchOutput(resultMap, writer, 1);
-		}
+		JSONWriter.asSearchOutput(resultMap, writer, 1);
 	}
 
-	class SearchTask implements Runnable {
+	/**
+	 * Searches the index for one line of a query file.
+	 */
+	class SearchTask implements Callable<Map.Entry<String, ArrayList<SearchResult>>> {
 		private final String line;
 		private final boolean searchFlag;
+		private final Set<String> seen;
 
-		public SearchTask(String line, boolean searchFlag) {
+		public SearchTask(String line, boolean searchFlag, Set<String> seen) {
 			this.line = line;
 			this.searchFlag = searchFlag;
+			this.seen = seen;
 		}
 
+		/**
+		 * Returns the query of the line and its results, or null if the line has no
+		 * words or its query was already searched by another task.
+		 */
 		@Override
-		public void run() {
-			try {
-				Stemmer wordStemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		public Map.Entry<String, ArrayList<SearchResult>> call() throws IOException {
+			StemCache stems = StemCache.shared();
 
-				String[] parsed = ParserOfText.parse(line);
+			String[] parsed = ParserOfText.parse(line);
 
-				TreeSet<String> words = new TreeSet<String>();
+			TreeSet<String> words = new TreeSet<String>();
 
-				for (String wordi : parsed) {
-					words.add(wordStemmer.stem(wordi).toString());
-				}
+			for (String wordi : parsed) {
+				words.add(stems.stem(wordi));
+			}
 
-				String stringLine = String.join(" ", words);
+			String stringLine = String.join(" ", words);
 
-				synchronized (resultMap) {
-					if (resultMap.containsKey(stringLine)) {
-						return;
-					}
-				}
+			if (stringLine.length() == 0 || !seen.add(stringLine)) {
+				return null;
+			}
 
-				ArrayList<SearchResult> searchResult;
-				
-				if (stringLine.length() != 0) {
-					if (searchFlag == false) {
-						searchResult = index.exactSearch(words);
-					} else {
-						searchResult = index.partialSearch(words);
-					}
-					synchronized (resultMap) {
-						resultMap.put(stringLine.toString(), searchResult);
-					}
+			ArrayList<SearchResult> searchResult = queue.compute(() -> {
+				if (searchFlag == false) {
+					return index.exactSearch(words);
+				} else {
+					return index.partialSearch(words);
 				}
-
-//				if (!resultMap.keySet().contains(stringLine.toString())) {
-//					synchronized (resultMap) {
-//
-//						if (searchFlag == false) {
-//							ArrayList<SearchResult> searchResult = index.exactSearch(words);
-//							if (stringLine.length() != 0) {
-//								resultMap.put(stringLine.toString(), searchResult);
-//
-//							}
-//						} else {
-//							ArrayList<SearchResult> searchResult = index.partialSearch(words);
-//							if (stringLine.length() != 0) {
-//								resultMap.put(stringLine.toString(), searchResult);
-//
-//							}
-//						}
-//					}
-//				}
-			} finally {
-			}
+			});
+			return Map.entry(stringLine, searchResult);
 		}
 	}
 }
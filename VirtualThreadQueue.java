@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A work queue that runs every task on its own virtual thread, so tasks that
+ * wait on I/O, such as reading files from network storage, overlap without
+ * tuning a number of worker threads. Since virtual threads are not limited in
+ * number, the parsing and searching done through {@link #compute(CpuWork)} is
+ * capped by a semaphore sized to the number of processors.
+ *
+ * Virtual threads are created by reflection, so this class compiles and loads
+ * on runtimes without them; {@link #isSupported()} tells whether it may be
+ * used.
+ */
+public class VirtualThreadQueue extends WorkQueue {
+
+	/** Creates virtual threads, or null if the runtime has none. */
+	private static final ThreadFactory VIRTUAL = virtualFactory();
+
+	/** The queue whose task the current thread is running, if any. */
+	private static final ThreadLocal<VirtualThreadQueue> OWNER = new ThreadLocal<>();
+
+	/** Creates the thread of each task. */
+	private final ThreadFactory threads;
+
+	/** Permits for CPU-bound work. */
+	private final Semaphore cpu;
+
+	/** The number of permits for CPU-bound work. */
+	private final int parallelism;
+
+	/**
+	 * Starts a work queue that limits CPU-bound work to the number of processors.
+	 *
+	 * @throws UnsupportedOperationException if the runtime has no virtual threads
+	 */
+	public VirtualThreadQueue() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Starts a work queue that limits CPU-bound work to the specified number of
+	 * tasks at once.
+	 *
+	 * @param parallelism the number of tasks that may do CPU-bound work at once
+	 * @throws UnsupportedOperationException if the runtime has no virtual threads
+	 */
+	public VirtualThreadQueue(int parallelism) {
+		this(parallelism, 0, Saturation.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue that holds at most a fixed number of unfinished tasks.
+	 *
+	 * @param parallelism the number of tasks that may do CPU-bound work at once
+	 * @param capacity    the maximum number of unfinished tasks, or 0 if unbounded
+	 * @param saturation  what to do when the queue is full
+	 * @throws UnsupportedOperationException if the runtime has no virtual threads
+	 *
+	 * @see WorkQueue#WorkQueue(int, int, WorkQueue.Saturation)
+	 */
+	public VirtualThreadQueue(int parallelism, int capacity, Saturation saturation) {
+		this(supported(), parallelism, capacity, saturation);
+	}
+
+	/**
+	 * Starts a work queue that runs each task on a thread from a factory.
+	 *
+	 * @param threads     creates the thread of each task
+	 * @param parallelism the number of tasks that may do CPU-bound work at once
+	 * @param capacity    the maximum number of unfinished tasks, or 0 if unbounded
+	 * @param saturation  what to do when the queue is full
+	 */
+	VirtualThreadQueue(ThreadFactory threads, int parallelism, int capacity, Saturation saturation) {
+		super(parallelism, capacity, saturation, false);
+		this.threads = threads;
+		this.parallelism = Math.max(1, parallelism);
+		this.cpu = new Semaphore(this.parallelism);
+	}
+
+	/**
+	 * Returns whether the runtime supports virtual threads.
+	 *
+	 * @return true if this queue may be created
+	 */
+	public static boolean isSupported() {
+		return VIRTUAL != null;
+	}
+
+	/**
+	 * Returns the factory of virtual threads.
+	 *
+	 * @return the factory of virtual threads
+	 * @throws UnsupportedOperationException if the runtime has no virtual threads
+	 */
+	private static ThreadFactory supported() {
+		if (VIRTUAL == null) {
+			throw new UnsupportedOperationException("Virtual threads are not supported by this runtime");
+		}
+		return VIRTUAL;
+	}
+
+	/**
+	 * Looks up {@code Thread.ofVirtual().factory()}, which is only available on
+	 * newer runtimes.
+	 *
+	 * @return a factory of virtual threads, or null if there is none
+	 */
+	private static ThreadFactory virtualFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Starts a thread that runs the work request.
+	 *
+	 * @param r work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue was shutdown
+	 */
+	@Override
+	protected void schedule(Runnable r) {
+		if (isShutdown()) {
+			throw new RejectedExecutionException("Work queue was shutdown");
+		}
+
+		incrementPending();
+		threads.newThread(() -> {
+			OWNER.set(this);
+			try {
+				r.run();
+			} catch (RuntimeException ex) {
+				System.err.println("Warning: Work queue encountered an exception while running.");
+			} finally {
+				OWNER.remove();
+				decrementPending();
+			}
+		}).start();
+	}
+
+	/**
+	 * Runs CPU-bound work once one of the permits is free, so no more tasks parse
+	 * or search at once than there are permits.
+	 */
+	@Override
+	public <T> T compute(CpuWork<T> work) throws IOException {
+		cpu.acquireUninterruptibly();
+		try {
+			return work.call();
+		} finally {
+			cpu.release();
+		}
+	}
+
+	/**
+	 * Returns true, so tasks read their input before computing, and wait on I/O
+	 * without holding a permit for CPU-bound work.
+	 */
+	@Override
+	public boolean prefetch() {
+		return true;
+	}
+
+	/**
+	 * Tests whether the calling thread is running a task of this queue.
+	 *
+	 * @return true if called from a task of this queue
+	 */
+	@Override
+	protected boolean isWorker() {
+		return OWNER.get() == this;
+	}
+
+	/**
+	 * Names every virtual thread alike, so the metrics of the queue total the busy
+	 * time of all tasks instead of keeping one entry per task.
+	 *
+	 * @return the name shared by the threads of this queue
+	 */
+	@Override
+	protected String workerName() {
+		return "virtual";
+	}
+
+	/**
+	 * Adds the one shared worker every virtual thread is totalled under to the
+	 * metrics of the queue.
+	 *
+	 * @param metrics the metrics to add the worker to
+	 */
+	@Override
+	protected void register(QueueMetrics metrics) {
+		metrics.register(workerName(), true);
+	}
+
+	/**
+	 * Returns the number of tasks that may do CPU-bound work at once.
+	 *
+	 * @return number of permits for CPU-bound work
+	 */
+	@Override
+	public int size() {
+		return parallelism;
+	}
+}
@@ -1,4 +1,10 @@
+import java.io.IOException;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A simple work queue implementation based on the IBM developerWorks article by
@@ -13,11 +19,11 @@ public class WorkQueue {
 
 	/**
 	 * Pool of worker threads that will wait in the background until work is
-	 * available.
+	 * available, or null if a subclass runs work on threads of its own.
 	 */
 	private final PoolWorker[] workers;
 
-	/** Queue of pending work requests. */
+	/** Queue of pending work requests, or null if the pool was not started. */
 	private final LinkedList<Runnable> queue;
 
 	/** Used to signal the queue should be shutdown. */
@@ -26,7 +32,49 @@ public class WorkQueue {
 	/** The default number of threads to use when not specified. */
 	public static final int DEFAULT = 5;
 
-	private int pending;
+	/** The number of tasks scheduled but not yet finished. */
+	private final AtomicInteger pending;
+
+	/**
+	 * What {@link #execute(Runnable)} does when a bounded queue already holds as
+	 * many unfinished tasks as its capacity allows.
+	 */
+	public enum Saturation {
+		/** Waits until a task finishes. */
+		BLOCK,
+		/** Runs the task on the calling thread instead. */
+		CALLER_RUNS,
+		/** Throws a {@link RejectedExecutionException}. */
+		REJECT
+	}
+
+	/**
+	 * CPU-bound work done by a task, such as parsing or searching, that may throw
+	 * an IOException.
+	 *
+	 * @param <T> the type of the result
+	 */
+	public interface CpuWork<T> {
+		/**
+		 * Does the work.
+		 *
+		 * @return the result of the work
+		 * @throws IOException if unable to read the input of the work
+		 */
+		T call() throws IOException;
+	}
+
+	/** The maximum number of unfinished tasks, or 0 if unbounded. */
+	private final int capacity;
+
+	/** Permits for the unfinished tasks of a bounded queue, or null. */
+	private final Semaphore permits;
+
+	/** What to do when a bounded queue is full. */
+	private final Saturation saturation;
+
+	/** The metrics of the tasks executed, or null if not enabled. */
+	private volatile QueueMetrics metrics;
 
 	/**
 	 * Starts a work queue with the default number of threads.
@@ -38,26 +86,23 @@ public class WorkQueue {
 	}
 
 	/**
-	 * increases the the number of pending tasks
+	 * Counts a task as scheduled but not yet finished. Called by
+	 * {@link #schedule(Runnable)} before the task can start.
 	 */
-	private void incrementPending() {
-		synchronized (this) {
-			pending++;
-		}
+	protected void incrementPending() {
+		pending.incrementAndGet();
 	}
 
 	/**
-	 * decreases the number of pending tasks
+	 * Marks a task as finished, waking any threads waiting in {@link #finish()}
+	 * once no tasks are pending. Called by the thread that ran the task.
 	 */
-	private void decrementPending() {
-		synchronized (this) {
-
-			assert pending > 0;
-			pending--;
-
-			if (pending == 0) {
+	protected void decrementPending() {
+		int remaining = pending.decrementAndGet();
+		assert remaining >= 0;
+		if (remaining == 0) {
+			synchronized (this) {
 				this.notifyAll();
-
 			}
 		}
 	}
@@ -69,24 +114,251 @@ public class WorkQueue {
 	 */
 
 	public WorkQueue(int threads) {
-		this.queue = new LinkedList<Runnable>();
-		this.workers = new PoolWorker[threads];
+		this(threads, true);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads that holds at most
+	 * a fixed number of unfinished tasks, so producers of many tasks do not fill
+	 * the heap with tasks waiting to run.
+	 *
+	 * @param threads    number of worker threads; should be greater than 1
+	 * @param capacity   the maximum number of unfinished tasks, or 0 if unbounded
+	 * @param saturation what to do when the queue is full
+	 */
+	public WorkQueue(int threads, int capacity, Saturation saturation) {
+		this(threads, capacity, saturation, true);
+	}
+
+	/**
+	 * Initializes a work queue, optionally without starting its worker threads, so
+	 * subclasses may schedule work on threads of their own.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 * @param start   whether to start the worker threads of this class
+	 */
+	protected WorkQueue(int threads, boolean start) {
+		this(threads, 0, Saturation.BLOCK, start);
+	}
+
+	/**
+	 * Initializes a work queue that may be bounded, optionally without starting
+	 * its worker threads. A subclass that does not start them must override
+	 * {@link #schedule(Runnable)}, {@link #size()} and
+	 * {@link #register(QueueMetrics)}, and count its tasks with
+	 * {@link #incrementPending()} and {@link #decrementPending()}.
+	 *
+	 * @param threads    number of worker threads; should be greater than 1
+	 * @param capacity   the maximum number of unfinished tasks, or 0 if unbounded
+	 * @param saturation what to do when the queue is full
+	 * @param start      whether to start the worker threads of this class
+	 */
+	protected WorkQueue(int threads, int capacity, Saturation saturation, boolean start) {
+		this.queue = start ? new LinkedList<Runnable>() : null;
+		this.workers = start ? new PoolWorker[threads] : null;
 		this.shutdown = false;
-		this.pending = 0;
+		this.pending = new AtomicInteger();
+		this.capacity = Math.max(0, capacity);
+		this.permits = capacity > 0 ? new Semaphore(capacity) : null;
+		this.saturation = saturation;
 
-		for (int i = 0; i < threads; i++) {
-			this.workers[i] = new PoolWorker();
-			this.workers[i].start();
+		if (start) {
+			for (int i = 0; i < workers.length; i++) {
+				this.workers[i] = new PoolWorker();
+				this.workers[i].start();
+			}
 		}
 	}
 
 	/**
 	 * Adds a work request to the queue. A thread will process this request when
-	 * available.
+	 * available. If the queue is bounded and full, the saturation policy decides
+	 * what happens instead; a worker thread of the queue always runs the request
+	 * itself, since it could otherwise wait on tasks that only workers can finish.
 	 *
 	 * @param r work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue is full and rejects work, or
+	 *                                    was shutdown
 	 */
 	public void execute(Runnable r) {
+		if (permits == null) {
+			schedule(track(r));
+			return;
+		}
+
+		if (!permits.tryAcquire()) {
+			if (saturation == Saturation.CALLER_RUNS || isWorker()) {
+				try {
+					track(r).run();
+				} catch (RuntimeException ex) {
+					System.err.println("Warning: Work queue encountered an exception while running.");
+				}
+				return;
+			}
+			if (saturation == Saturation.REJECT) {
+				throw new RejectedExecutionException("Work queue is full: " + capacity + " tasks");
+			}
+			permits.acquireUninterruptibly();
+		}
+
+		Runnable task = track(r);
+		try {
+			schedule(() -> {
+				try {
+					task.run();
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds a work request to the queue, or runs it on the calling thread if the
+	 * queue rejects it. Used for work the rest of a build depends on, such as
+	 * walking a directory or merging indexes, which cannot be skipped.
+	 *
+	 * @param r work request (in the form of a {@link Runnable} object)
+	 */
+	public void executeOrRun(Runnable r) {
+		try {
+			execute(r);
+		} catch (RejectedExecutionException e) {
+			r.run();
+		}
+	}
+
+	/**
+	 * Wraps an admitted work request to record its metrics, if they are enabled.
+	 *
+	 * @param r work request (in the form of a {@link Runnable} object)
+	 * @return the work request to run instead
+	 */
+	private Runnable track(Runnable r) {
+		QueueMetrics metrics = this.metrics;
+		return metrics == null ? r : metrics.track(r);
+	}
+
+	/**
+	 * Starts recording the wait and run times of the tasks executed from now on,
+	 * along with the depth of the queue, the busy time of each worker and the
+	 * number of tasks completed and failed. Calling it again returns the metrics
+	 * already being recorded.
+	 *
+	 * @return the metrics of the queue
+	 */
+	public synchronized QueueMetrics enableMetrics() {
+		if (metrics == null) {
+			QueueMetrics created = new QueueMetrics(size(), this::workerName);
+			register(created);
+			metrics = created;
+		}
+		return metrics;
+	}
+
+	/**
+	 * Adds every worker of the queue to its metrics, so workers that never run a
+	 * task are reported too.
+	 *
+	 * @param metrics the metrics to add the workers to
+	 */
+	protected void register(QueueMetrics metrics) {
+		for (PoolWorker worker : workers) {
+			metrics.register(worker.getName(), false);
+		}
+	}
+
+	/**
+	 * Counts the task running on the calling thread as failed in the metrics of
+	 * the queue. Tasks that catch their own exceptions, instead of letting them
+	 * reach the worker thread, call this so their failures are not counted as
+	 * completed.
+	 */
+	public void reportFailure() {
+		QueueMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.fail();
+		}
+	}
+
+	/**
+	 * Returns the metrics of the queue.
+	 *
+	 * @return the metrics of the queue, or null if they were not enabled
+	 *
+	 * @see #enableMetrics()
+	 */
+	public QueueMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Names the worker running the calling thread, to total the busy time of each
+	 * worker in the metrics of the queue.
+	 *
+	 * @return the name of the calling thread
+	 */
+	protected String workerName() {
+		return Thread.currentThread().getName();
+	}
+
+	/**
+	 * Returns the maximum number of unfinished tasks of the queue.
+	 *
+	 * @return the capacity of the queue, or 0 if unbounded
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Runs CPU-bound work on behalf of a task. The worker threads of this queue
+	 * already limit how many tasks run at once, so the work is run directly;
+	 * queues whose threads are not limited in number cap it instead.
+	 *
+	 * @param <T>  the type of the result
+	 * @param work the work to run
+	 * @return the result of the work
+	 * @throws IOException if the work throws one
+	 */
+	public <T> T compute(CpuWork<T> work) throws IOException {
+		return work.call();
+	}
+
+	/**
+	 * Returns whether tasks should read their input into memory before running
+	 * their CPU-bound work through {@link #compute(CpuWork)}, so that waiting on
+	 * I/O overlaps with the work of other tasks.
+	 *
+	 * @return false, since worker threads of this queue are limited in number
+	 */
+	public boolean prefetch() {
+		return false;
+	}
+
+	/**
+	 * Tests whether the calling thread is a worker thread of this queue.
+	 *
+	 * @return true if called from a worker thread of this queue
+	 */
+	protected boolean isWorker() {
+		Thread current = Thread.currentThread();
+		return current instanceof PoolWorker && ((PoolWorker) current).owner() == this;
+	}
+
+	/**
+	 * Adds an admitted work request to the queue for a worker thread to run.
+	 *
+	 * @param r work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue was shutdown
+	 */
+	protected void schedule(Runnable r) {
+		if (shutdown) {
+			throw new RejectedExecutionException("Work queue was shutdown");
+		}
 		incrementPending();
 		synchronized (queue) {
 			queue.addLast(r);
@@ -94,12 +366,56 @@ public class WorkQueue {
 		}
 	}
 
+	/**
+	 * Adds a task that returns a result to the queue. The future completes with
+	 * the result of the task, or exceptionally with anything it throws.
+	 *
+	 * @param <T>  the type of the result
+	 * @param task the task to run
+	 * @return a future of the result of the task
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		execute(completing(future, task));
+		return future;
+	}
+
+	/**
+	 * Wraps a task in a work request that completes a future with its result. A
+	 * task that throws is reported as failed.
+	 *
+	 * @param <T>    the type of the result
+	 * @param future the future to complete
+	 * @param task   the task to run
+	 * @return a work request that runs the task
+	 */
+	private <T> Runnable completing(CompletableFuture<T> future, Callable<T> task) {
+		return () -> {
+			try {
+				future.complete(task.call());
+			} catch (Exception e) {
+				reportFailure();
+				future.completeExceptionally(e);
+			}
+		};
+	}
+
+	/**
+	 * Creates a group of tasks that can be waited on separately from any other
+	 * work in the queue.
+	 *
+	 * @return a new, empty task group
+	 */
+	public TaskGroup newGroup() {
+		return new TaskGroup();
+	}
+
 	/**
 	 * Waits for all pending work to be finished.
 	 */
 	public void finish() {
 		synchronized (this) {
-			while (pending > 0) {
+			while (pending.get() > 0) {
 				try {
 					this.wait();
 
@@ -117,12 +433,22 @@ public class WorkQueue {
 	public void shutdown() {
 		shutdown = true;
 
-		synchronized (this.queue) {
-			queue.notifyAll();
-
+		if (queue != null) {
+			synchronized (this.queue) {
+				queue.notifyAll();
+			}
 		}
 	}
 
+	/**
+	 * Tests whether the queue was asked to shutdown.
+	 *
+	 * @return true if {@link #shutdown()} was called
+	 */
+	protected boolean isShutdown() {
+		return shutdown;
+	}
+
 	/**
 	 * Returns the number of worker threads being used by the work queue.
 	 *
@@ -132,6 +458,84 @@ public class WorkQueue {
 		return workers.length;
 	}
 
+	/**
+	 * A batch of tasks run by the queue that keeps its own count of pending
+	 * tasks, so a caller can wait for one batch without waiting for unrelated
+	 * work. Tasks added through the group may add more tasks to it.
+	 */
+	public class TaskGroup {
+		private final AtomicInteger pending;
+
+		private TaskGroup() {
+			this.pending = new AtomicInteger();
+		}
+
+		/**
+		 * Adds a work request of this group to the queue.
+		 *
+		 * @param r work request (in the form of a {@link Runnable} object)
+		 * @throws RejectedExecutionException if the queue rejects the request, which
+		 *                                    is then not counted as pending
+		 */
+		public void execute(Runnable r) {
+			pending.incrementAndGet();
+			try {
+				WorkQueue.this.execute(() -> {
+					try {
+						r.run();
+					} finally {
+						done();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				done();
+				throw e;
+			}
+		}
+
+		/**
+		 * Marks a task of this group as finished, waking any threads waiting in
+		 * {@link #finish()} once no tasks of the group are pending.
+		 */
+		private void done() {
+			if (pending.decrementAndGet() == 0) {
+				synchronized (this) {
+					this.notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Adds a task of this group that returns a result to the queue.
+		 *
+		 * @param <T>  the type of the result
+		 * @param task the task to run
+		 * @return a future of the result of the task
+		 *
+		 * @see WorkQueue#submit(Callable)
+		 */
+		public <T> CompletableFuture<T> submit(Callable<T> task) {
+			CompletableFuture<T> future = new CompletableFuture<>();
+			execute(completing(future, task));
+			return future;
+		}
+
+		/**
+		 * Waits for every task of this group to be finished.
+		 */
+		public void finish() {
+			synchronized (this) {
+				while (pending.get() > 0) {
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						System.out.println("error occured while waiting for work to finish");
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Waits until work is available in the work queue. When work is found, will
 	 * remove the work from the queue and run it. If a shutdown is detected, will
@@ -139,6 +543,15 @@ public class WorkQueue {
 	 * running in the background until a shutdown is requested.
 	 */
 	private class PoolWorker extends Thread {
+		/**
+		 * Returns the queue this worker belongs to.
+		 *
+		 * @return the work queue of this worker
+		 */
+		public WorkQueue owner() {
+			return WorkQueue.this;
+		}
+
 		@Override
 		public void run() {
 			Runnable r = null;
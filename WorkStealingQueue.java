@@ -0,0 +1,223 @@
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A work queue where every worker thread has its own deque of tasks. Tasks
+ * executed by a worker, such as the subdirectories of a walk or the chunks of a
+ * file, are pushed onto the front of that worker's deque and taken from the
+ * front again, while idle workers steal from the back of other deques. Tasks
+ * executed by any other thread go onto a shared submission queue and are taken
+ * in the order they were executed. None of these paths take a lock.
+ *
+ * Idle workers park themselves, and each execute unparks at most one of them,
+ * instead of waking every idle worker. Pending tasks are counted by the base
+ * {@link WorkQueue}, which only uses its monitor once none are left, to wake
+ * threads waiting in {@link #finish()}.
+ */
+public class WorkStealingQueue extends WorkQueue {
+
+	/** The worker threads. */
+	private final Worker[] workers;
+
+	/** Tasks executed by threads other than the workers. */
+	private final ConcurrentLinkedQueue<Runnable> submissions;
+
+	/** Workers that are parked, or about to park, waiting for work. */
+	private final ConcurrentLinkedQueue<Worker> idle;
+
+	/**
+	 * Starts a work queue with the default number of threads.
+	 *
+	 * @see #WorkStealingQueue(int)
+	 */
+	public WorkStealingQueue() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 */
+	public WorkStealingQueue(int threads) {
+		this(threads, 0, Saturation.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue with the specified number of threads that holds at most
+	 * a fixed number of unfinished tasks.
+	 *
+	 * @param threads    number of worker threads; should be greater than 1
+	 * @param capacity   the maximum number of unfinished tasks, or 0 if unbounded
+	 * @param saturation what to do when the queue is full
+	 *
+	 * @see WorkQueue#WorkQueue(int, int, WorkQueue.Saturation)
+	 */
+	public WorkStealingQueue(int threads, int capacity, Saturation saturation) {
+		super(threads, capacity, saturation, false);
+		this.workers = new Worker[Math.max(1, threads)];
+		this.submissions = new ConcurrentLinkedQueue<>();
+		this.idle = new ConcurrentLinkedQueue<>();
+
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i);
+		}
+		for (Worker worker : workers) {
+			worker.start();
+		}
+	}
+
+	/**
+	 * Adds a work request to the deque of the calling worker, or to the shared
+	 * submission queue if called from any other thread, and unparks an idle worker
+	 * if there is one.
+	 *
+	 * @param r work request (in the form of a {@link Runnable} object)
+	 * @throws RejectedExecutionException if the queue was shutdown
+	 */
+	@Override
+	protected void schedule(Runnable r) {
+		if (isShutdown()) {
+			throw new RejectedExecutionException("Work queue was shutdown");
+		}
+		incrementPending();
+
+		if (isWorker()) {
+			((Worker) Thread.currentThread()).tasks.addFirst(r);
+		} else {
+			submissions.add(r);
+		}
+
+		Worker sleeper = idle.poll();
+		if (sleeper != null) {
+			LockSupport.unpark(sleeper);
+		}
+	}
+
+	/**
+	 * Tests whether the calling thread is a worker thread of this queue.
+	 *
+	 * @return true if called from a worker thread of this queue
+	 */
+	@Override
+	protected boolean isWorker() {
+		Thread current = Thread.currentThread();
+		return current instanceof Worker && ((Worker) current).owner() == this;
+	}
+
+	/**
+	 * Asks the queue to shutdown. Any unprocessed work will not be finished, but
+	 * threads in-progress will not be interrupted. Parked workers are unparked so
+	 * they notice.
+	 */
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		for (Worker worker : workers) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	/**
+	 * Adds every worker thread to the metrics of the queue.
+	 *
+	 * @param metrics the metrics to add the workers to
+	 */
+	@Override
+	protected void register(QueueMetrics metrics) {
+		for (Worker worker : workers) {
+			metrics.register(worker.getName(), false);
+		}
+	}
+
+	/**
+	 * Returns the number of worker threads being used by the work queue.
+	 *
+	 * @return number of worker threads
+	 */
+	@Override
+	public int size() {
+		return workers.length;
+	}
+
+	/**
+	 * Takes the next task for a worker: from the front of its own deque, then from
+	 * the submission queue, then from the back of the other workers' deques.
+	 *
+	 * @param worker the worker looking for a task
+	 * @return a task, or null if there is no work anywhere
+	 */
+	private Runnable take(Worker worker) {
+		Runnable r = worker.tasks.pollFirst();
+		if (r != null) {
+			return r;
+		}
+
+		r = submissions.poll();
+		if (r != null) {
+			return r;
+		}
+
+		for (int i = 1; i < workers.length; i++) {
+			r = workers[(worker.id + i) % workers.length].tasks.pollLast();
+			if (r != null) {
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Runs tasks from its own deque, the submission queue or the other workers
+	 * until a shutdown is requested, parking whenever there is no work anywhere.
+	 */
+	private class Worker extends Thread {
+		private final int id;
+		private final ConcurrentLinkedDeque<Runnable> tasks;
+
+		public Worker(int id) {
+			this.id = id;
+			this.tasks = new ConcurrentLinkedDeque<>();
+		}
+
+		/**
+		 * Returns the queue this worker belongs to.
+		 *
+		 * @return the work queue of this worker
+		 */
+		public WorkStealingQueue owner() {
+			return WorkStealingQueue.this;
+		}
+
+		@Override
+		public void run() {
+			while (!isShutdown()) {
+				Runnable r = take(this);
+
+				if (r == null) {
+					// registers before checking again, so an execute in between unparks it
+					idle.add(this);
+					r = take(this);
+					if (r == null) {
+						if (!isShutdown()) {
+							LockSupport.park(this);
+						}
+						idle.remove(this);
+						continue;
+					}
+					idle.remove(this);
+				}
+
+				try {
+					r.run();
+				} catch (RuntimeException ex) {
+					System.err.println("Warning: Work queue encountered an exception while running.");
+				} finally {
+					decrementPending();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The write side of an inverted index: adding, merging, removing and compacting
+ * locations, and freezing the result for searching. Implemented by
+ * {@link InvertedIndex}, and through {@link ConcurrentIndex} by the indexes that
+ * may be written by several threads at once.
+ */
+public interface WritableIndex extends SearchableIndex {
+
+	/**
+	 * adds a word found at a position of a location
+	 *
+	 * @param stemmedWord a stemmed and parsed word to be added to the index
+	 * @param inputFile   the file path for where a word was found
+	 * @param position    the position of the word when it was found in a file
+	 */
+	public abstract void add(String stemmedWord, String inputFile, int position);
+
+	/**
+	 * adds every word of a location to the index at once. The position lists are
+	 * moved into the index, so the buffer should not be used afterwards.
+	 *
+	 * @param location      the file path for where the words were found
+	 * @param termPositions map of stemmed words to their positions in the location
+	 * @param totalWords    the number of words in the location
+	 */
+	public abstract void addDocument(String location, Map<String, PositionList> termPositions, int totalWords);
+
+	/**
+	 * adds the words, locations and positions of a smaller, local index
+	 *
+	 * @param localIndex an InvertedIndex of words, paths, and locations
+	 */
+	public abstract void addAll(InvertedIndex localIndex) throws IOException;
+
+	/**
+	 * merges another index into this one. The other index should not be used
+	 * afterwards, since its position lists are moved into this index.
+	 *
+	 * @param other an InvertedIndex of words, paths, and locations
+	 */
+	public abstract void merge(InvertedIndex other);
+
+	/**
+	 * removes locations from the index by marking them with tombstones; their
+	 * postings stay in the index until {@link #compact()} purges them.
+	 *
+	 * @param locations the location paths to remove
+	 * @return the number of locations that were in the index
+	 */
+	public abstract int removeAll(Collection<String> locations);
+
+	/**
+	 * replaces a location with the contents of a local index, which should hold the
+	 * new postings of the location.
+	 *
+	 * @param location   the location path to replace
+	 * @param localIndex an InvertedIndex of the new words and positions of the
+	 *                   location
+	 */
+	public abstract void replace(String location, InvertedIndex localIndex) throws IOException;
+
+	/**
+	 * purges the postings of every removed location from the index.
+	 */
+	public abstract void compact();
+
+	/**
+	 * Compresses the position lists of every word and location in the index.
+	 */
+	public abstract void compress();
+
+	/**
+	 * Builds an immutable snapshot of the index that can be searched by any number
+	 * of threads without locking.
+	 *
+	 * @return a frozen copy of the index
+	 */
+	public abstract FrozenInvertedIndex freeze();
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests that a thread holding the read lock of an
+ * {@link OptimisticReadWriteLock} can take it again while a writer waits. Needs
+ * no test framework; compile it with the project sources and run its main
+ * method, e.g. from the project directory with the usual class path:
+ *
+ * <pre>
+ * javac -d out *.java test/*.java
+ * java -cp out OptimisticReadWriteLockTest
+ * </pre>
+ *
+ * Exits with a non-zero status if a check fails or times out.
+ */
+public class OptimisticReadWriteLockTest {
+
+	/**
+	 * A check that may throw, run on its own thread so a deadlock shows up as a
+	 * timeout instead of a hang.
+	 */
+	private interface Check {
+		public abstract void run() throws Exception;
+	}
+
+	/**
+	 * Runs every check and reports the result of each.
+	 *
+	 * @param args unused
+	 */
+	public static void main(String[] args) {
+		boolean passed = true;
+		passed &= run("testNestedReadWithWaitingWriter", 10, OptimisticReadWriteLockTest::testNestedReadWithWaitingWriter);
+		passed &= run("testPositionCountWhileAdding", 20, OptimisticReadWriteLockTest::testPositionCountWhileAdding);
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs a check on a daemon thread, waiting at most the specified time.
+	 *
+	 * @param name    the name to report the check under
+	 * @param seconds how long the check may take
+	 * @param check   the check to run
+	 * @return true if the check finished in time without throwing
+	 */
+	private static boolean run(String name, int seconds, Check check) {
+		Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(() -> {
+			try {
+				check.run();
+			} catch (Throwable e) {
+				failure[0] = e;
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+
+		try {
+			thread.join(seconds * 1000L);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (thread.isAlive()) {
+			System.out.println("FAIL " + name + ": timed out after " + seconds + " seconds");
+			return false;
+		}
+		if (failure[0] != null) {
+			System.out.println("FAIL " + name + ": " + failure[0]);
+			return false;
+		}
+		System.out.println("PASS " + name);
+		return true;
+	}
+
+	/**
+	 * Throws if a condition does not hold.
+	 *
+	 * @param condition the condition to check
+	 * @param message   describes the condition
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * A nested read must not wait behind a writer that is itself waiting for the
+	 * outer read to be released.
+	 */
+	private static void testNestedReadWithWaitingWriter() throws InterruptedException {
+		OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+		AtomicBoolean wrote = new AtomicBoolean();
+
+		lock.lockReadOnly();
+		Thread writer = new Thread(() -> {
+			lock.lockReadWrite();
+			wrote.set(true);
+			lock.unlockReadWrite();
+		});
+		writer.start();
+
+		// the writer parks once it has announced itself and found a reader
+		while (writer.getState() != Thread.State.TIMED_WAITING) {
+			Thread.onSpinWait();
+		}
+
+		lock.lockReadOnly();
+		lock.unlockReadOnly();
+		lock.unlockReadOnly();
+
+		writer.join();
+		check(wrote.get(), "the writer took the lock");
+	}
+
+	/**
+	 * Calls that take the read lock and call back into other locked methods of the
+	 * index must not deadlock with a concurrent writer.
+	 */
+	private static void testPositionCountWhileAdding() throws InterruptedException {
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex(new OptimisticReadWriteLock());
+		index.add("w", "p", 1);
+
+		Thread writer = new Thread(() -> {
+			for (int i = 2; i < 20_000; i++) {
+				index.add("w", "p", i);
+			}
+		});
+		writer.start();
+
+		while (writer.isAlive()) {
+			check(index.positionCount("w", "p") > 0, "the word keeps its first position");
+		}
+		writer.join();
+		check(index.positionCount("w", "p") == 19_999, "every position was added");
+	}
+}